@@ -15,9 +15,11 @@ import android.util.Log;
 
 import androidx.preference.PreferenceManager;
 
-import org.lineageos.lineageparts.contributors.ContributorsCloudFragment;
+import org.lineageos.lineageparts.contributors.ContributorsDatabaseJobService;
 import org.lineageos.lineageparts.gestures.TouchscreenGestureSettings;
 import org.lineageos.lineageparts.input.ButtonSettings;
+import org.lineageos.lineageparts.utils.BackgroundExecutor;
+import org.lineageos.lineageparts.utils.DeviceCapabilities;
 
 public class BootReceiver extends BroadcastReceiver {
 
@@ -40,8 +42,12 @@ public class BootReceiver extends BroadcastReceiver {
         ButtonSettings.restoreKeySwapper(ctx);
         TouchscreenGestureSettings.restoreTouchscreenGestureStates(ctx);
 
-        // Extract the contributors database
-        ContributorsCloudFragment.extractContributorsCloudDatabase(ctx);
+        // Compute the device capabilities ahead of the first fragment or search query
+        final Context appContext = ctx.getApplicationContext();
+        BackgroundExecutor.get().execute(TAG, signal -> DeviceCapabilities.get(appContext));
+
+        // Extract the contributors database, if needed, out of the boot broadcast
+        ContributorsDatabaseJobService.schedule(ctx);
     }
 
     private boolean hasRestoredTunable(Context context) {
@@ -0,0 +1,100 @@
+/*
+ * SPDX-FileCopyrightText: 2026 The LineageOS Project
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package org.lineageos.lineageparts;
+
+import android.util.ArrayMap;
+import android.util.Log;
+
+import org.lineageos.lineageparts.PartsUpdater.Refreshable;
+import org.lineageos.lineageparts.search.Searchable;
+import org.lineageos.lineageparts.search.Searchable.SearchIndexProvider;
+
+import java.lang.reflect.Field;
+import java.util.Map;
+
+/**
+ * Process-wide registry of the static providers exposed by the part fragments.
+ * <p>
+ * Each fragment class is looked up by reflection only once, and the result (including
+ * the lack of a provider) is cached for the lifetime of the process. Since a package
+ * update always restarts the process, the cache never holds stale providers.
+ */
+public final class PartProviders {
+
+    private static final String TAG = PartProviders.class.getSimpleName();
+
+    private static final String FIELD_NAME_SEARCH_INDEX_DATA_PROVIDER =
+            "SEARCH_INDEX_DATA_PROVIDER";
+
+    // Cached marker for classes without provider
+    private static final Object NO_PROVIDER = new Object();
+
+    private static final Map<String, Object> sSearchIndexProviders = new ArrayMap<>();
+    private static final Map<String, Object> sSummaryProviders = new ArrayMap<>();
+
+    private PartProviders() {
+    }
+
+    public static SearchIndexProvider getSearchIndexProvider(String className) {
+        return (SearchIndexProvider) getProvider(sSearchIndexProviders, className,
+                Searchable.class, FIELD_NAME_SEARCH_INDEX_DATA_PROVIDER);
+    }
+
+    public static Refreshable.SummaryProvider getSummaryProvider(String className) {
+        return (Refreshable.SummaryProvider) getProvider(sSummaryProviders, className,
+                Refreshable.class, PartsUpdater.FIELD_NAME_SUMMARY_PROVIDER);
+    }
+
+    private static Object getProvider(Map<String, Object> cache, String className,
+            Class<?> iface, String fieldName) {
+        if (className == null) {
+            return null;
+        }
+
+        Object provider;
+        synchronized (cache) {
+            provider = cache.get(className);
+        }
+        if (provider == null) {
+            provider = resolveProvider(className, iface, fieldName);
+            if (provider == null) {
+                provider = NO_PROVIDER;
+            }
+            synchronized (cache) {
+                cache.put(className, provider);
+            }
+        }
+        return provider != NO_PROVIDER ? provider : null;
+    }
+
+    private static Object resolveProvider(String className, Class<?> iface,
+            String fieldName) {
+        final Class<?> clazz;
+        try {
+            clazz = Class.forName(className);
+        } catch (ClassNotFoundException e) {
+            Log.d(TAG, "Cannot find class: " + className);
+            return null;
+        }
+
+        if (!iface.isAssignableFrom(clazz)) {
+            return null;
+        }
+
+        try {
+            final Field f = clazz.getField(fieldName);
+            return f.get(null);
+        } catch (NoSuchFieldException e) {
+            Log.e(TAG, "Cannot find field '" + fieldName + "' in " + className);
+        } catch (SecurityException se) {
+            Log.e(TAG, "Security exception for field '" + fieldName + "'");
+        } catch (IllegalAccessException e) {
+            Log.e(TAG, "Illegal access to field '" + fieldName + "'");
+        } catch (IllegalArgumentException e) {
+            Log.e(TAG, "Illegal argument when accessing field '" + fieldName + "'");
+        }
+        return null;
+    }
+}
@@ -12,8 +12,6 @@ import android.util.Log;
 import lineageos.preference.PartInfo;
 import lineageos.preference.PartsList;
 
-import java.lang.reflect.Field;
-
 import lineageos.preference.RemotePreferenceUpdater;
 import lineageos.preference.SettingsHelper;
 
@@ -43,28 +41,6 @@ public class PartsUpdater extends RemotePreferenceUpdater {
 
     private static final boolean DEBUG = Log.isLoggable(TAG, Log.VERBOSE);
 
-    private Refreshable.SummaryProvider getPartSummary(PartInfo pi) {
-        final Class<?> clazz;
-        try {
-            clazz = Class.forName(pi.getFragmentClass());
-        } catch (ClassNotFoundException e) {
-            Log.d(TAG, "Cannot find class: " + pi.getFragmentClass());
-            return null;
-        }
-
-        if (!Refreshable.class.isAssignableFrom(clazz)) {
-            return null;
-        }
-
-        try {
-            final Field f = clazz.getField(FIELD_NAME_SUMMARY_PROVIDER);
-            return (Refreshable.SummaryProvider) f.get(null);
-        } catch (Exception e) {
-            // ignore
-        }
-        return null;
-    }
-
     @Override
     protected boolean fillResultExtras(Context context, String key, Bundle bundle) {
         final PartInfo pi = PartsList.get(context).getPartInfo(key);
@@ -75,7 +51,8 @@ public class PartsUpdater extends RemotePreferenceUpdater {
 
         bundle.putString(EXTRA_KEY, key);
 
-        final Refreshable.SummaryProvider si = getPartSummary(pi);
+        final Refreshable.SummaryProvider si =
+                PartProviders.getSummaryProvider(pi.getFragmentClass());
         if (si != null) {
             pi.setSummary(si.getSummary(context, key));
             bundle.putString(EXTRA_SUMMARY, pi.getSummary());
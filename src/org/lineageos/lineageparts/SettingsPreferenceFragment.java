@@ -15,8 +15,12 @@ import android.content.Intent;
 import android.content.pm.PackageManager;
 import android.net.Uri;
 import android.os.Bundle;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
 import android.util.ArraySet;
 import android.util.Log;
+import android.view.Choreographer;
 import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
@@ -38,6 +42,7 @@ import org.lineageos.lineageparts.widget.HighlightablePreferenceGroupAdapter;
 import org.lineageos.lineageparts.widget.LayoutPreference;
 
 import java.util.Arrays;
+import java.util.Set;
 import java.util.UUID;
 
 import lineageos.preference.SettingsHelper;
@@ -78,6 +83,16 @@ public abstract class SettingsPreferenceFragment extends ObservablePreferenceFra
 
     private final ArraySet<Uri> mTriggerUris = new ArraySet<>();
 
+    // Settings which changed since the last batch, only accessed on the main thread
+    private final ArraySet<Uri> mChangedUris = new ArraySet<>();
+    private final Handler mHandler = new Handler(Looper.getMainLooper());
+    private boolean mSettingsChangesScheduled;
+    private long mMinSettingsChangeIntervalMs;
+    private long mLastSettingsChangeMs;
+    private final Choreographer.FrameCallback mSettingsChangesFrameCallback =
+            frameTimeNanos -> dispatchSettingsChanges();
+    private final Runnable mSettingsChangesRunnable = this::dispatchSettingsChanges;
+
     @Override
     public void onCreate(Bundle icicle) {
         super.onCreate(icicle);
@@ -131,11 +146,70 @@ public abstract class SettingsPreferenceFragment extends ObservablePreferenceFra
         unregisterObserverIfNeeded();
     }
 
+    /**
+     * Collects the change, which is dispatched along with the other changes of the same
+     * frame to {@link #onSettingsChanged(Set)}.
+     */
     @Override
-    public void onSettingsChanged(Uri contentUri) {
+    public final void onSettingsChanged(Uri contentUri) {
+        if (Looper.myLooper() != Looper.getMainLooper()) {
+            mHandler.post(() -> onSettingsChanged(contentUri));
+            return;
+        }
+        if (!isAdded()) {
+            // Posted from another thread before the fragment was detached
+            return;
+        }
+        mChangedUris.add(contentUri);
+        if (mSettingsChangesScheduled) {
+            return;
+        }
+        mSettingsChangesScheduled = true;
+
+        final long delay = mLastSettingsChangeMs + mMinSettingsChangeIntervalMs
+                - SystemClock.uptimeMillis();
+        if (delay > 0) {
+            mHandler.postDelayed(mSettingsChangesRunnable, delay);
+        } else {
+            Choreographer.getInstance().postFrameCallback(mSettingsChangesFrameCallback);
+        }
+    }
+
+    /**
+     * Called at most once per frame with the watched settings which changed since the
+     * last call, so that bulk writes only cause a single refresh.
+     */
+    protected void onSettingsChanged(Set<Uri> contentUris) {
         PartsUpdater.notifyChanged(getActivity(), getPreferenceScreen().getKey());
     }
 
+    /**
+     * Sets the minimum interval between two batches of settings changes, for fragments
+     * whose refresh is too expensive to run every frame.
+     */
+    protected void setMinSettingsChangeInterval(long intervalMs) {
+        mMinSettingsChangeIntervalMs = intervalMs;
+    }
+
+    private void dispatchSettingsChanges() {
+        mSettingsChangesScheduled = false;
+        if (mChangedUris.isEmpty() || !isAdded()) {
+            mChangedUris.clear();
+            return;
+        }
+        final Set<Uri> changedUris = new ArraySet<>(mChangedUris);
+        mChangedUris.clear();
+        mLastSettingsChangeMs = SystemClock.uptimeMillis();
+        onSettingsChanged(changedUris);
+    }
+
+    private void cancelSettingsChanges() {
+        Choreographer.getInstance().removeFrameCallback(mSettingsChangesFrameCallback);
+        mHandler.removeCallbacks(mSettingsChangesRunnable);
+        mSettingsChangesScheduled = false;
+        mChangedUris.clear();
+    }
+
     public void registerObserverIfNeeded() {
         if (!mIsDataSetObserverRegistered) {
             if (mCurrentRootAdapter != null) {
@@ -292,6 +366,7 @@ public abstract class SettingsPreferenceFragment extends ObservablePreferenceFra
             SettingsHelper.get(getActivity()).stopWatching(this);
             mTriggerUris.clear();
         }
+        cancelSettingsChanges();
         super.onDetach();
     }
 
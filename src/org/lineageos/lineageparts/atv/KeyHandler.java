@@ -5,24 +5,40 @@
 
 package org.lineageos.lineageparts.atv;
 
+import android.content.BroadcastReceiver;
 import android.content.Context;
 import android.content.Intent;
+import android.content.IntentFilter;
 import android.content.pm.PackageManager;
+import android.database.ContentObserver;
+import android.os.Handler;
+import android.os.Looper;
 import android.provider.Settings;
 import android.util.Log;
+import android.util.SparseArray;
 import android.view.KeyEvent;
 
+import com.android.internal.os.BackgroundThread;
 import com.android.internal.os.DeviceKeyHandler;
 
-import java.util.Map;
-import java.util.stream.Collectors;
-import java.util.stream.IntStream;
-
 public class KeyHandler implements DeviceKeyHandler {
     private static final String TAG = KeyHandler.class.getSimpleName();
-    private static Map<Integer, String> KEYMAP;
 
     private final Context mContext;
+    private final SparseArray<String> mKeymap = new SparseArray<>();
+
+    // Ready to fire intents of the keymap targets, swapped whenever packages change
+    private volatile SparseArray<Intent> mLaunchIntents;
+
+    private volatile boolean mSetupCompleted;
+
+    private final BroadcastReceiver mPackageReceiver = new BroadcastReceiver() {
+        @Override
+        public void onReceive(Context context, Intent intent) {
+            // Delivered on the background thread
+            resolveLaunchIntents();
+        }
+    };
 
     public KeyHandler(Context context) {
         mContext = context;
@@ -32,32 +48,82 @@ public class KeyHandler implements DeviceKeyHandler {
         String[] packages = mContext.getResources().getStringArray(
                 org.lineageos.platform.internal.R.array.keyhandler_packages);
 
-        KEYMAP = IntStream.range(0, keycodes.length).boxed()
-                .collect(Collectors.toMap(i -> keycodes[i], i -> packages[i]));
+        for (int i = 0; i < keycodes.length; i++) {
+            mKeymap.put(keycodes[i], packages[i]);
+        }
+
+        final ContentObserver setupObserver = new ContentObserver(
+                new Handler(Looper.getMainLooper())) {
+            @Override
+            public void onChange(boolean selfChange) {
+                updateSetupCompleted();
+            }
+        };
+        mContext.getContentResolver().registerContentObserver(
+                Settings.Secure.getUriFor(Settings.Secure.TV_USER_SETUP_COMPLETE), false,
+                setupObserver);
+        updateSetupCompleted();
+
+        final IntentFilter packageFilter = new IntentFilter();
+        packageFilter.addAction(Intent.ACTION_PACKAGE_ADDED);
+        packageFilter.addAction(Intent.ACTION_PACKAGE_CHANGED);
+        packageFilter.addAction(Intent.ACTION_PACKAGE_REMOVED);
+        packageFilter.addDataScheme("package");
+        mContext.registerReceiver(mPackageReceiver, packageFilter, null,
+                BackgroundThread.getHandler());
+        BackgroundThread.getHandler().post(this::resolveLaunchIntents);
     }
 
     public KeyEvent handleKeyEvent(KeyEvent event) {
-        if (event.getAction() != KeyEvent.ACTION_UP || !hasSetupCompleted()) {
+        if (event.getAction() != KeyEvent.ACTION_UP || !mSetupCompleted) {
             return event;
         }
 
         int keyCode = event.getKeyCode();
-        String targetName = KEYMAP.get(keyCode);
+        String targetName = mKeymap.get(keyCode);
 
         if (targetName != null) {
-            launchTarget(targetName);
+            launchTarget(keyCode, targetName);
             return null;
         }
 
         return event;
     }
 
-    private boolean hasSetupCompleted() {
-        return Settings.Secure.getInt(mContext.getContentResolver(),
+    private void updateSetupCompleted() {
+        mSetupCompleted = Settings.Secure.getInt(mContext.getContentResolver(),
                 Settings.Secure.TV_USER_SETUP_COMPLETE, 0) != 0;
     }
 
-    private void launchTarget(String targetName) {
+    private void launchTarget(int keyCode, String targetName) {
+        SparseArray<Intent> launchIntents = mLaunchIntents;
+        if (launchIntents == null) {
+            // Only happens if a key comes in before the first resolution finished
+            launchIntents = resolveLaunchIntents();
+        }
+        Intent launchIntent = launchIntents.get(keyCode);
+
+        // If something resolved, run it; otherwise log a warning
+        if (launchIntent != null) {
+            mContext.startActivity(launchIntent);
+        } else {
+            Log.w(TAG, "Cannot launch " + targetName + ": package/intent not found.");
+        }
+    }
+
+    private SparseArray<Intent> resolveLaunchIntents() {
+        final SparseArray<Intent> launchIntents = new SparseArray<>(mKeymap.size());
+        for (int i = 0; i < mKeymap.size(); i++) {
+            Intent launchIntent = resolveTarget(mKeymap.valueAt(i));
+            if (launchIntent != null) {
+                launchIntents.put(mKeymap.keyAt(i), launchIntent);
+            }
+        }
+        mLaunchIntents = launchIntents;
+        return launchIntents;
+    }
+
+    private Intent resolveTarget(String targetName) {
         PackageManager pm = mContext.getPackageManager();
 
         // First try to look the name up as a package
@@ -73,12 +139,6 @@ public class KeyHandler implements DeviceKeyHandler {
                 launchIntent = null;
             }
         }
-
-        // If something resolved, run it; otherwise log a warning
-        if (launchIntent != null) {
-            mContext.startActivity(launchIntent);
-        } else {
-            Log.w(TAG, "Cannot launch " + targetName + ": package/intent not found.");
-        }
+        return launchIntent;
     }
 }
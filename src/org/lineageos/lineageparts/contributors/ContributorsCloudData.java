@@ -0,0 +1,473 @@
+/*
+ * SPDX-FileCopyrightText: 2026 The LineageOS Project
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package org.lineageos.lineageparts.contributors;
+
+import android.content.res.AssetFileDescriptor;
+import android.content.res.AssetManager;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.graphics.Matrix;
+import android.graphics.Paint;
+import android.graphics.Rect;
+import android.graphics.RectF;
+import android.util.Log;
+import android.util.SparseIntArray;
+
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * In-memory copy of the contributors cloud metadata, with every position and font size
+ * already translated to the {@link #CLOUD_SIZE} coordinate space used by the renderer.
+ *
+ * The metadata is loaded once into parallel primitive arrays (names are interned in a
+ * shared table), the layout of every name is measured at load time, and a uniform grid
+ * is built over the bounds of the names, so neither drawing, hit-testing nor focusing a
+ * contributor needs to access the database or measure text again.
+ *
+ * The metadata is preferably read from {@link #ASSET_NAME}, a compact binary copy of the
+ * cloud metadata generated from contributors.db by tools/pack_contributors_cloud.py, that is
+ * stored uncompressed in the apk and memory mapped in place. The database is only used as a
+ * fallback when that asset is not usable.
+ */
+class ContributorsCloudData {
+
+    /** Size (in cloud units) of the square the cloud is laid out in. */
+    static final int CLOUD_SIZE = 2048;
+
+    static final String ASSET_NAME = "contributors.bin";
+    private static final int ASSET_MAGIC = 0x4243434C; // 'LCCB'
+    private static final int ASSET_VERSION = 1;
+    private static final int ASSET_HEADER_SIZE = 40;
+    private static final int ASSET_RECORD_SIZE = 28;
+
+    static final int ROTATION_NONE = 0;
+    static final int ROTATION_CCW = -1;
+
+    private static final int GRID_SIZE = 64;
+    private static final float GRID_CELL_SIZE = (float) CLOUD_SIZE / GRID_SIZE;
+
+    private static final String TAG = "ContributorsCloud";
+
+    private final int mCount;
+    private final int[] mIds;
+    private final int[] mNameIndexes;
+    private final String[] mNames;
+    private final float[] mX;
+    private final float[] mY;
+    private final float[] mFontSizes;
+    private final byte[] mRotations;
+    // Translation applied before rotating vertical names
+    private final float[] mOffsets;
+    // Bounds of the drawn names (left, top, right, bottom), in cloud coordinates
+    private final float[] mBounds;
+    private final SparseIntArray mIndexesById;
+
+    // Grid index, the entries of cell n are stored in mCellEntries[mCellStarts[n]]
+    // to mCellEntries[mCellStarts[n + 1] - 1], in drawing order
+    private final int[] mCellStarts;
+    private final int[] mCellEntries;
+
+    // Statistics, only available when loaded from the asset
+    private int mTotalContributors = -1;
+    private int mTotalCommits = -1;
+    private long mLastUpdate = -1;
+
+    /**
+     * Reusable state of a grid query. Every thread querying the grid must use its own.
+     */
+    static class Query {
+        private int[] mResults = new int[64];
+        private int mCount;
+        private int[] mMarks;
+        private int mStamp;
+
+        int getCount() {
+            return mCount;
+        }
+
+        int get(int position) {
+            return mResults[position];
+        }
+
+        private void add(int index) {
+            if (mCount == mResults.length) {
+                mResults = Arrays.copyOf(mResults, mCount * 2);
+            }
+            mResults[mCount++] = index;
+        }
+    }
+
+    private ContributorsCloudData(int count, int[] ids, int[] nameIndexes, String[] names,
+            float[] x, float[] y, float[] fontSizes, byte[] rotations) {
+        mCount = count;
+        mIds = ids;
+        mNameIndexes = nameIndexes;
+        mNames = names;
+        mX = x;
+        mY = y;
+        mFontSizes = fontSizes;
+        mRotations = rotations;
+        mOffsets = new float[count * 2];
+        mBounds = new float[count * 4];
+
+        mIndexesById = new SparseIntArray(count);
+        for (int i = 0; i < count; i++) {
+            mIndexesById.put(ids[i], i);
+        }
+
+        layout();
+
+        mCellStarts = new int[GRID_SIZE * GRID_SIZE + 1];
+        mCellEntries = buildGrid();
+    }
+
+    int getCount() {
+        return mCount;
+    }
+
+    int getTotalContributors() {
+        return mTotalContributors;
+    }
+
+    int getTotalCommits() {
+        return mTotalCommits;
+    }
+
+    long getLastUpdate() {
+        return mLastUpdate;
+    }
+
+    int getId(int index) {
+        return mIds[index];
+    }
+
+    String getName(int index) {
+        return mNames[mNameIndexes[index]];
+    }
+
+    float getX(int index) {
+        return mX[index];
+    }
+
+    float getY(int index) {
+        return mY[index];
+    }
+
+    float getFontSize(int index) {
+        return mFontSizes[index];
+    }
+
+    int getRotation(int index) {
+        return mRotations[index];
+    }
+
+    float getOffsetX(int index) {
+        return mOffsets[index * 2];
+    }
+
+    float getOffsetY(int index) {
+        return mOffsets[index * 2 + 1];
+    }
+
+    void getBounds(int index, RectF outBounds) {
+        int i = index * 4;
+        outBounds.set(mBounds[i], mBounds[i + 1], mBounds[i + 2], mBounds[i + 3]);
+    }
+
+    boolean intersects(int index, RectF rect) {
+        int i = index * 4;
+        return mBounds[i] < rect.right && rect.left < mBounds[i + 2]
+                && mBounds[i + 1] < rect.bottom && rect.top < mBounds[i + 3];
+    }
+
+    /**
+     * @return the index of the contributor, or -1 if it doesn't exist
+     */
+    int indexOf(int id) {
+        return mIndexesById.get(id, -1);
+    }
+
+    /**
+     * Collects the indexes of every name whose bounds intersect the rect, in drawing order.
+     */
+    void query(RectF rect, Query query) {
+        query.mCount = 0;
+        if (query.mMarks == null) {
+            query.mMarks = new int[mCount];
+        }
+        if (++query.mStamp == 0) {
+            Arrays.fill(query.mMarks, 0);
+            query.mStamp = 1;
+        }
+
+        final int left = toCell(rect.left);
+        final int top = toCell(rect.top);
+        final int right = toCell(rect.right);
+        final int bottom = toCell(rect.bottom);
+        for (int cy = top; cy <= bottom; cy++) {
+            for (int cx = left; cx <= right; cx++) {
+                int cell = cy * GRID_SIZE + cx;
+                for (int i = mCellStarts[cell]; i < mCellStarts[cell + 1]; i++) {
+                    int index = mCellEntries[i];
+                    if (query.mMarks[index] != query.mStamp && intersects(index, rect)) {
+                        query.mMarks[index] = query.mStamp;
+                        query.add(index);
+                    }
+                }
+            }
+        }
+
+        // Names spanning several cells are found out of order
+        Arrays.sort(query.mResults, 0, query.mCount);
+    }
+
+    /**
+     * Finds the contributor name drawn at the given point. Only the names of the grid cell
+     * containing the point are checked.
+     *
+     * @return the index of the topmost contributor name at the point, or -1 if there is none
+     */
+    int findAt(float x, float y) {
+        if (x < 0 || y < 0 || x >= CLOUD_SIZE || y >= CLOUD_SIZE) {
+            return -1;
+        }
+
+        final int cell = toCell(y) * GRID_SIZE + toCell(x);
+        // Later names are drawn on top of the previous ones
+        for (int i = mCellStarts[cell + 1] - 1; i >= mCellStarts[cell]; i--) {
+            int index = mCellEntries[i];
+            int b = index * 4;
+            if (mIds[index] > 0 && x >= mBounds[b] && x < mBounds[b + 2]
+                    && y >= mBounds[b + 1] && y < mBounds[b + 3]) {
+                return index;
+            }
+        }
+        return -1;
+    }
+
+    private void layout() {
+        Paint paint = new Paint(Paint.ANTI_ALIAS_FLAG);
+        Rect textBounds = new Rect();
+        Matrix matrix = new Matrix();
+        RectF bounds = new RectF();
+
+        for (int i = 0; i < mCount; i++) {
+            final String name = getName(i);
+            final float x = mX[i];
+            final float y = mY[i];
+            paint.setTextSize(mFontSizes[i]);
+            paint.getTextBounds(name, 0, name.length(), textBounds);
+            float w = paint.measureText(name);
+            float h = textBounds.height();
+
+            matrix.reset();
+            if (mRotations[i] == ROTATION_CCW) {
+                // Vertical (-90 rotation)
+                mOffsets[i * 2] = h;
+                mOffsets[i * 2 + 1] = w - h;
+                matrix.setTranslate(h, w - h);
+                matrix.preRotate(-90, x, y);
+            } else if (mRotations[i] != ROTATION_NONE) {
+                // Vertical (+90 rotation)
+                mOffsets[i * 2] = h / 2;
+                mOffsets[i * 2 + 1] = -h;
+                matrix.setTranslate(h / 2, -h);
+                matrix.preRotate(90, x, y);
+            }
+
+            bounds.set(x + textBounds.left, y + textBounds.top, x + w, y + textBounds.bottom);
+            matrix.mapRect(bounds);
+            mBounds[i * 4] = bounds.left;
+            mBounds[i * 4 + 1] = bounds.top;
+            mBounds[i * 4 + 2] = bounds.right;
+            mBounds[i * 4 + 3] = bounds.bottom;
+        }
+    }
+
+    private int[] buildGrid() {
+        // First pass counts the entries of every cell, second pass fills them
+        final int[] counts = new int[GRID_SIZE * GRID_SIZE];
+        int[] entries = null;
+        for (int pass = 0; pass < 2; pass++) {
+            for (int i = 0; i < mCount; i++) {
+                final int left = toCell(mBounds[i * 4]);
+                final int top = toCell(mBounds[i * 4 + 1]);
+                final int right = toCell(mBounds[i * 4 + 2]);
+                final int bottom = toCell(mBounds[i * 4 + 3]);
+                for (int cy = top; cy <= bottom; cy++) {
+                    for (int cx = left; cx <= right; cx++) {
+                        int cell = cy * GRID_SIZE + cx;
+                        if (pass == 0) {
+                            counts[cell]++;
+                        } else {
+                            entries[mCellStarts[cell] + counts[cell]++] = i;
+                        }
+                    }
+                }
+            }
+
+            if (pass == 0) {
+                for (int cell = 0; cell < counts.length; cell++) {
+                    mCellStarts[cell + 1] = mCellStarts[cell] + counts[cell];
+                }
+                Arrays.fill(counts, 0);
+                entries = new int[mCellStarts[counts.length]];
+            }
+        }
+        return entries;
+    }
+
+    private static int toCell(float v) {
+        return Math.max(0, Math.min(GRID_SIZE - 1, (int) (v / GRID_CELL_SIZE)));
+    }
+
+    /**
+     * Loads the cloud metadata from the memory mapped {@link #ASSET_NAME} asset.
+     *
+     * @return the cloud data, or null if the asset is missing, compressed or invalid
+     */
+    static ContributorsCloudData load(AssetManager assets) {
+        try (AssetFileDescriptor afd = assets.openFd(ASSET_NAME);
+             FileInputStream fis = new FileInputStream(afd.getFileDescriptor());
+             FileChannel channel = fis.getChannel()) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY,
+                    afd.getStartOffset(), afd.getLength());
+            return load(buffer.order(ByteOrder.LITTLE_ENDIAN));
+        } catch (FileNotFoundException ex) {
+            // Either not bundled, or compressed in the apk and thus not mappable
+            Log.w(TAG, "Cannot map " + ASSET_NAME + ", falling back to the database");
+        } catch (IOException | RuntimeException ex) {
+            Log.e(TAG, "Failed to read " + ASSET_NAME, ex);
+        }
+        return null;
+    }
+
+    private static ContributorsCloudData load(ByteBuffer buffer) {
+        if (buffer.getInt(0) != ASSET_MAGIC || buffer.getInt(4) != ASSET_VERSION) {
+            Log.e(TAG, "Unsupported " + ASSET_NAME + " format");
+            return null;
+        }
+        final int osize = buffer.getInt(8);
+        final int count = buffer.getInt(28);
+        final int namesOffset = buffer.getInt(32);
+
+        int[] ids = new int[count];
+        int[] nameIndexes = new int[count];
+        float[] x = new float[count];
+        float[] y = new float[count];
+        float[] fontSizes = new float[count];
+        byte[] rotations = new byte[count];
+        // Names are already stored once, so intern them by their offset
+        SparseIntArray nameIndexesByOffset = new SparseIntArray();
+        String[] names = new String[count];
+        int nameCount = 0;
+
+        byte[] nameBytes = new byte[64];
+        for (int i = 0; i < count; i++) {
+            final int record = ASSET_HEADER_SIZE + i * ASSET_RECORD_SIZE;
+            ids[i] = buffer.getInt(record);
+            final int nameOffset = buffer.getInt(record + 4);
+            int nameIndex = nameIndexesByOffset.get(nameOffset, -1);
+            if (nameIndex == -1) {
+                final int nameLength = buffer.getInt(record + 8);
+                if (nameBytes.length < nameLength) {
+                    nameBytes = new byte[nameLength];
+                }
+                buffer.position(namesOffset + nameOffset);
+                buffer.get(nameBytes, 0, nameLength);
+                nameIndex = nameCount++;
+                names[nameIndex] = new String(nameBytes, 0, nameLength, StandardCharsets.UTF_8);
+                nameIndexesByOffset.put(nameOffset, nameIndex);
+            }
+            nameIndexes[i] = nameIndex;
+            rotations[i] = (byte) buffer.getInt(record + 12);
+            x[i] = translate(buffer.getFloat(record + 16), osize);
+            y[i] = translate(buffer.getFloat(record + 20), osize);
+            fontSizes[i] = translate(buffer.getFloat(record + 24), osize);
+            if (ids[i] < 0) {
+                y[i] -= translate(fontSizes[i], osize);
+            }
+        }
+
+        ContributorsCloudData data = new ContributorsCloudData(count, ids, nameIndexes,
+                Arrays.copyOf(names, nameCount), x, y, fontSizes, rotations);
+        data.mTotalContributors = buffer.getInt(12);
+        data.mTotalCommits = buffer.getInt(16);
+        data.mLastUpdate = buffer.getLong(20);
+        return data;
+    }
+
+    static ContributorsCloudData load(SQLiteDatabase db) {
+        // Extract original image size
+        Cursor c = db.rawQuery("select value from info where key = ?;", new String[]{"orig_size"});
+        if (c == null || !c.moveToFirst()) {
+            // We don't have a valid cursor reference
+            return null;
+        }
+        int osize = c.getInt(0);
+        c.close();
+
+        // Query the metadata table to extract all the commits information
+        c = db.rawQuery("select id, name, x, y, r, fs from metadata;", null);
+        if (c == null) {
+            // We don't have a valid cursor reference
+            return null;
+        }
+        try {
+            final int count = c.getCount();
+            int[] ids = new int[count];
+            int[] nameIndexes = new int[count];
+            float[] x = new float[count];
+            float[] y = new float[count];
+            float[] fontSizes = new float[count];
+            byte[] rotations = new byte[count];
+            Map<String, Integer> names = new HashMap<>();
+
+            int i = 0;
+            while (c.moveToNext() && i < count) {
+                ids[i] = c.getInt(0);
+                String name = c.getString(1);
+                Integer nameIndex = names.get(name);
+                if (nameIndex == null) {
+                    nameIndex = names.size();
+                    names.put(name, nameIndex);
+                }
+                nameIndexes[i] = nameIndex;
+                x[i] = translate(c.getFloat(2), osize);
+                y[i] = translate(c.getFloat(3), osize);
+                rotations[i] = (byte) c.getInt(4);
+                fontSizes[i] = translate(c.getFloat(5), osize);
+                if (ids[i] < 0) {
+                    y[i] -= translate(fontSizes[i], osize);
+                }
+                i++;
+            }
+
+            String[] nameTable = new String[names.size()];
+            for (Map.Entry<String, Integer> name : names.entrySet()) {
+                nameTable[name.getValue()] = name.getKey();
+            }
+            return new ContributorsCloudData(i, ids, nameIndexes, nameTable,
+                    x, y, fontSizes, rotations);
+        } finally {
+            c.close();
+        }
+    }
+
+    private static float translate(float v, int ssize) {
+        return (v * CLOUD_SIZE) / ssize;
+    }
+}
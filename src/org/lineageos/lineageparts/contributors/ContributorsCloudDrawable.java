@@ -0,0 +1,469 @@
+/*
+ * SPDX-FileCopyrightText: 2026 The LineageOS Project
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package org.lineageos.lineageparts.contributors;
+
+import android.app.ActivityManager;
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.ColorFilter;
+import android.graphics.Paint;
+import android.graphics.PixelFormat;
+import android.graphics.PorterDuff;
+import android.graphics.Rect;
+import android.graphics.RectF;
+import android.graphics.drawable.Drawable;
+import android.os.CancellationSignal;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.ArrayMap;
+import android.util.Log;
+import android.util.LruCache;
+
+import androidx.annotation.NonNull;
+
+import org.lineageos.lineageparts.utils.BackgroundExecutor;
+
+import java.util.ArrayDeque;
+import java.util.Map;
+
+/**
+ * Drawable that renders the contributors cloud on demand as a set of bitmap tiles.
+ *
+ * The cloud is split into a pyramid of zoom levels, and only the tiles intersecting the
+ * current viewport at the level matching the current display scale are rendered. Tiles
+ * are kept in a LRU cache sized from the memory class of the device, and missing tiles are
+ * temporarily replaced by an upscaled lower level tile until they are rendered. Changing
+ * the selected contributor only repaints the bounds of the affected names in the tiles
+ * that are already rendered.
+ */
+class ContributorsCloudDrawable extends Drawable {
+
+    private static final String TAG = "ContributorsCloud";
+
+    private static final int TILE_SIZE = 256;
+    // Bounds the levels whatever the zoom, levels are far from the 20 bits of the tile keys
+    private static final int MAX_LEVEL = 10;
+
+    // Fraction of the memory class of the device reserved for the tiles cache
+    private static final int MEMORY_CLASS_FRACTION = 6;
+    private static final int MAX_FREE_BITMAPS = 8;
+
+    private final ContributorsCloudData mData;
+    private final int mMaxLevel;
+    private final int mColorForeground;
+    private final int mColorSelected;
+
+    private final LruCache<Long, Bitmap> mTiles;
+    private final ArrayDeque<Bitmap> mFreeBitmaps = new ArrayDeque<>();
+    // Tiles being rendered, only accessed on the main thread
+    private final Map<Long, CancellationSignal> mPendingTiles = new ArrayMap<>();
+
+    private final Handler mHandler = new Handler(Looper.getMainLooper());
+
+    private final Paint mBitmapPaint = new Paint(Paint.FILTER_BITMAP_FLAG);
+    // Tiles are rendered in parallel on the background pool, each with a state of its own
+    private final ArrayDeque<RenderState> mFreeRenderStates = new ArrayDeque<>();
+    // Used by the main thread to repaint the highlighted names
+    private final Paint mRepaintPaint = new Paint(Paint.ANTI_ALIAS_FLAG | Paint.DITHER_FLAG);
+    private final ContributorsCloudData.Query mRepaintQuery = new ContributorsCloudData.Query();
+    private final Canvas mRepaintCanvas = new Canvas();
+    private final RectF mDirtyRect = new RectF();
+    private final RectF mTileRect = new RectF();
+
+    private final Rect mClipBounds = new Rect();
+    private final Rect mSrcRect = new Rect();
+    private final RectF mDstRect = new RectF();
+
+    private volatile int mSelectedId = -1;
+    private volatile int mGeneration;
+
+    private volatile boolean mReleased;
+
+    private int mLevel;
+    private volatile int mVisibleLevel;
+    private volatile int mVisibleLeft, mVisibleTop, mVisibleRight, mVisibleBottom;
+
+    private static class RenderState {
+        final Paint mTextPaint = new Paint(Paint.ANTI_ALIAS_FLAG | Paint.DITHER_FLAG);
+        final ContributorsCloudData.Query mQuery = new ContributorsCloudData.Query();
+        final RectF mRect = new RectF();
+    }
+
+    /**
+     * @param maxDisplayScale the largest display scale the cloud can be zoomed to, which
+     *        the top level matches so that text stays sharp at full zoom
+     */
+    ContributorsCloudDrawable(Context context, ContributorsCloudData data,
+            int colorForeground, int colorSelected, float maxDisplayScale) {
+        mData = data;
+        int maxLevel = 0;
+        while (maxLevel < MAX_LEVEL && getLevelResolution(maxLevel) < maxDisplayScale) {
+            maxLevel++;
+        }
+        mMaxLevel = maxLevel;
+        mColorForeground = colorForeground;
+        mColorSelected = colorSelected;
+
+        ActivityManager am = context.getSystemService(ActivityManager.class);
+        int cacheSize = am.getMemoryClass() * 1024 * 1024 / MEMORY_CLASS_FRACTION;
+        mTiles = new LruCache<Long, Bitmap>(cacheSize) {
+            @Override
+            protected int sizeOf(Long key, Bitmap value) {
+                return value.getAllocationByteCount();
+            }
+
+            @Override
+            protected void entryRemoved(boolean evicted, Long key, Bitmap oldValue,
+                    Bitmap newValue) {
+                releaseBitmap(oldValue);
+            }
+        };
+    }
+
+    void setSelectedContributor(int id) {
+        final int oldId = mSelectedId;
+        if (oldId == id) {
+            return;
+        }
+        mSelectedId = id;
+
+        // Tiles being rendered right now use the old selection, so discard them
+        mGeneration++;
+        repaintContributor(oldId);
+        repaintContributor(id);
+        invalidateSelf();
+    }
+
+    /**
+     * Sets the current scale between the cloud coordinates and the screen pixels, so the
+     * level of detail of the rendered tiles matches the current zoom.
+     */
+    void setDisplayScale(float scale) {
+        int level = 0;
+        while (level < mMaxLevel && getLevelResolution(level) < scale) {
+            level++;
+        }
+        if (mLevel != level) {
+            mLevel = level;
+            invalidateSelf();
+        }
+    }
+
+    /**
+     * Returns the bounds (in cloud coordinates) that the contributor occupies in the cloud.
+     *
+     * @return true if the contributor exists
+     */
+    boolean getContributorBounds(int id, RectF outBounds) {
+        int index = mData.indexOf(id);
+        if (index < 0) {
+            return false;
+        }
+        mData.getBounds(index, outBounds);
+        return true;
+    }
+
+    /**
+     * @return the id of the contributor drawn at the given cloud coordinates, or -1
+     */
+    int findContributorAt(float x, float y) {
+        int index = mData.findAt(x, y);
+        return index >= 0 ? mData.getId(index) : -1;
+    }
+
+    void release() {
+        mReleased = true;
+        for (CancellationSignal signal : mPendingTiles.values()) {
+            signal.cancel();
+        }
+        mPendingTiles.clear();
+        mHandler.removeCallbacksAndMessages(null);
+        mGeneration++;
+        mTiles.evictAll();
+        synchronized (mFreeBitmaps) {
+            for (Bitmap bitmap : mFreeBitmaps) {
+                bitmap.recycle();
+            }
+            mFreeBitmaps.clear();
+        }
+    }
+
+    @Override
+    public void draw(@NonNull Canvas canvas) {
+        if (!canvas.getClipBounds(mClipBounds)
+                || !mClipBounds.intersect(0, 0, ContributorsCloudData.CLOUD_SIZE,
+                        ContributorsCloudData.CLOUD_SIZE)) {
+            return;
+        }
+
+        final int level = mLevel;
+        final float span = getTileSpan(level);
+        final int count = getTileCount(level);
+        final int left = clamp((int) (mClipBounds.left / span), count);
+        final int top = clamp((int) (mClipBounds.top / span), count);
+        final int right = clamp((int) (mClipBounds.right / span), count);
+        final int bottom = clamp((int) (mClipBounds.bottom / span), count);
+
+        // Publish the visible tiles, so the renderer can skip the ones no longer needed
+        mVisibleLevel = level;
+        mVisibleLeft = left;
+        mVisibleTop = top;
+        mVisibleRight = right;
+        mVisibleBottom = bottom;
+
+        for (int ty = top; ty <= bottom; ty++) {
+            for (int tx = left; tx <= right; tx++) {
+                Bitmap tile = mTiles.get(getTileKey(level, tx, ty));
+                if (tile != null) {
+                    mDstRect.set(tx * span, ty * span, (tx + 1) * span, (ty + 1) * span);
+                    canvas.drawBitmap(tile, null, mDstRect, mBitmapPaint);
+                    continue;
+                }
+
+                drawFallbackTile(canvas, level, tx, ty);
+                requestTile(level, tx, ty);
+            }
+        }
+    }
+
+    private void drawFallbackTile(Canvas canvas, int level, int tx, int ty) {
+        for (int depth = 1; depth <= level; depth++) {
+            int subSize = TILE_SIZE >> depth;
+            if (subSize == 0) {
+                break;
+            }
+
+            Bitmap parent = mTiles.get(getTileKey(level - depth, tx >> depth, ty >> depth));
+            if (parent == null) {
+                continue;
+            }
+
+            int mask = (1 << depth) - 1;
+            int srcLeft = (tx & mask) * subSize;
+            int srcTop = (ty & mask) * subSize;
+            float span = getTileSpan(level);
+            mSrcRect.set(srcLeft, srcTop, srcLeft + subSize, srcTop + subSize);
+            mDstRect.set(tx * span, ty * span, (tx + 1) * span, (ty + 1) * span);
+            canvas.drawBitmap(parent, mSrcRect, mDstRect, mBitmapPaint);
+            return;
+        }
+    }
+
+    private void requestTile(final int level, final int tx, final int ty) {
+        final long key = getTileKey(level, tx, ty);
+        if (mReleased || mPendingTiles.containsKey(key)) {
+            return;
+        }
+
+        final int generation = mGeneration;
+        final CancellationSignal pending = BackgroundExecutor.get().execute(TAG, signal -> {
+            Bitmap tile = null;
+            if (generation == mGeneration && isTileVisible(level, tx, ty)) {
+                try {
+                    tile = renderTile(level, tx, ty, signal);
+                } catch (Exception ex) {
+                    Log.e(TAG, "Failed to render cloud tile", ex);
+                }
+            }
+
+            final Bitmap result = tile;
+            mHandler.post(() -> {
+                if (mPendingTiles.get(key) == signal) {
+                    mPendingTiles.remove(key);
+                }
+                if (result == null) {
+                    return;
+                }
+                if (signal.isCanceled() || generation != mGeneration) {
+                    releaseBitmap(result);
+                    return;
+                }
+                mTiles.put(key, result);
+                invalidateSelf();
+            });
+        });
+        mPendingTiles.put(key, pending);
+    }
+
+    private boolean isTileVisible(int level, int tx, int ty) {
+        return level == mVisibleLevel
+                && tx >= mVisibleLeft && tx <= mVisibleRight
+                && ty >= mVisibleTop && ty <= mVisibleBottom;
+    }
+
+    /* returns the rendered tile, or null if the rendering was cancelled. */
+    private Bitmap renderTile(int level, int tx, int ty, CancellationSignal signal) {
+        final float resolution = getLevelResolution(level);
+        final float span = getTileSpan(level);
+        final int selectedId = mSelectedId;
+        final RenderState state = obtainRenderState();
+
+        Bitmap bitmap = obtainBitmap();
+        try {
+            Canvas canvas = new Canvas(bitmap);
+            canvas.scale(resolution, resolution);
+            canvas.translate(-tx * span, -ty * span);
+            state.mRect.set(tx * span, ty * span, (tx + 1) * span, (ty + 1) * span);
+            canvas.clipRect(state.mRect);
+
+            // Only draw the names inside the tile
+            mData.query(state.mRect, state.mQuery);
+            for (int i = 0; i < state.mQuery.getCount(); i++) {
+                if (signal.isCanceled()) {
+                    releaseBitmap(bitmap);
+                    return null;
+                }
+                int index = state.mQuery.get(i);
+                drawEntry(canvas, state.mTextPaint, index, mData.getId(index) == selectedId);
+            }
+            return bitmap;
+        } finally {
+            synchronized (mFreeRenderStates) {
+                mFreeRenderStates.add(state);
+            }
+        }
+    }
+
+    private RenderState obtainRenderState() {
+        synchronized (mFreeRenderStates) {
+            RenderState state = mFreeRenderStates.poll();
+            return state != null ? state : new RenderState();
+        }
+    }
+
+    private void repaintContributor(int id) {
+        int target = mData.indexOf(id);
+        if (target < 0) {
+            return;
+        }
+
+        // Leave some room for antialiasing
+        mData.getBounds(target, mDirtyRect);
+        mDirtyRect.inset(-1, -1);
+
+        final int selectedId = mSelectedId;
+        for (Map.Entry<Long, Bitmap> tile : mTiles.snapshot().entrySet()) {
+            final long key = tile.getKey();
+            final int level = (int) (key >>> 40);
+            final int tx = (int) ((key >>> 20) & 0xfffff);
+            final int ty = (int) (key & 0xfffff);
+            final float resolution = getLevelResolution(level);
+            final float span = getTileSpan(level);
+            mTileRect.set(tx * span, ty * span, (tx + 1) * span, (ty + 1) * span);
+            if (!mTileRect.intersect(mDirtyRect)) {
+                continue;
+            }
+
+            Canvas canvas = mRepaintCanvas;
+            canvas.setBitmap(tile.getValue());
+            canvas.save();
+            canvas.scale(resolution, resolution);
+            canvas.translate(-tx * span, -ty * span);
+            canvas.clipRect(mTileRect);
+            canvas.drawColor(Color.TRANSPARENT, PorterDuff.Mode.CLEAR);
+            mData.query(mTileRect, mRepaintQuery);
+            for (int i = 0; i < mRepaintQuery.getCount(); i++) {
+                int index = mRepaintQuery.get(i);
+                drawEntry(canvas, mRepaintPaint, index, mData.getId(index) == selectedId);
+            }
+            canvas.restore();
+            canvas.setBitmap(null);
+        }
+    }
+
+    private void drawEntry(Canvas canvas, Paint paint, int index, boolean selected) {
+        final String name = mData.getName(index);
+        final float x = mData.getX(index);
+        final float y = mData.getY(index);
+        paint.setColor(selected ? mColorSelected : mColorForeground);
+        paint.setTextSize(mData.getFontSize(index));
+
+        final int rotation = mData.getRotation(index);
+        if (rotation == ContributorsCloudData.ROTATION_NONE) {
+            // Horizontal
+            canvas.drawText(name, x, y, paint);
+            return;
+        }
+
+        // Vertical (-90 or +90 rotation)
+        canvas.save();
+        canvas.translate(mData.getOffsetX(index), mData.getOffsetY(index));
+        canvas.rotate(rotation == ContributorsCloudData.ROTATION_CCW ? -90 : 90, x, y);
+        canvas.drawText(name, x, y, paint);
+        canvas.restore();
+    }
+
+    private Bitmap obtainBitmap() {
+        synchronized (mFreeBitmaps) {
+            Bitmap bitmap = mFreeBitmaps.poll();
+            if (bitmap != null) {
+                bitmap.eraseColor(Color.TRANSPARENT);
+                return bitmap;
+            }
+        }
+        return Bitmap.createBitmap(TILE_SIZE, TILE_SIZE, Bitmap.Config.ARGB_8888);
+    }
+
+    private void releaseBitmap(Bitmap bitmap) {
+        synchronized (mFreeBitmaps) {
+            if (mFreeBitmaps.size() < MAX_FREE_BITMAPS && !mReleased) {
+                mFreeBitmaps.add(bitmap);
+                return;
+            }
+        }
+        bitmap.recycle();
+    }
+
+    private static float getLevelResolution(int level) {
+        // Level 0 draws the whole cloud at half of its size
+        return (1 << level) / 2f;
+    }
+
+    private static float getTileSpan(int level) {
+        return TILE_SIZE / getLevelResolution(level);
+    }
+
+    private static int getTileCount(int level) {
+        return (int) Math.ceil(ContributorsCloudData.CLOUD_SIZE / getTileSpan(level));
+    }
+
+    private static int clamp(int tile, int count) {
+        return Math.max(0, Math.min(count - 1, tile));
+    }
+
+    private static long getTileKey(int level, int tx, int ty) {
+        return ((long) level << 40) | ((long) tx << 20) | ty;
+    }
+
+    @Override
+    public int getIntrinsicWidth() {
+        return ContributorsCloudData.CLOUD_SIZE;
+    }
+
+    @Override
+    public int getIntrinsicHeight() {
+        return ContributorsCloudData.CLOUD_SIZE;
+    }
+
+    @Override
+    public void setAlpha(int alpha) {
+        mBitmapPaint.setAlpha(alpha);
+        invalidateSelf();
+    }
+
+    @Override
+    public void setColorFilter(ColorFilter colorFilter) {
+        mBitmapPaint.setColorFilter(colorFilter);
+        invalidateSelf();
+    }
+
+    @Override
+    public int getOpacity() {
+        return PixelFormat.TRANSLUCENT;
+    }
+}
@@ -10,23 +10,23 @@ import android.animation.Animator;
 import android.animation.Animator.AnimatorListener;
 import android.animation.AnimatorSet;
 import android.animation.ObjectAnimator;
-import android.app.ActivityManager;
 import android.content.Context;
+import android.content.SharedPreferences;
 import android.content.res.AssetManager;
 import android.content.res.Resources;
 import android.database.Cursor;
 import android.database.SQLException;
 import android.database.sqlite.SQLiteDatabase;
-import android.graphics.Bitmap;
-import android.graphics.Canvas;
-import android.graphics.Paint;
-import android.graphics.Rect;
+import android.graphics.RectF;
+import android.os.Build;
 import android.os.Bundle;
+import android.os.CancellationSignal;
 import android.os.Handler;
 import android.os.Looper;
 import android.text.Html;
 import android.text.TextUtils;
 import android.text.format.DateFormat;
+import android.util.DisplayMetrics;
 import android.util.Log;
 import android.util.TypedValue;
 import android.view.LayoutInflater;
@@ -46,24 +46,24 @@ import android.widget.TextView;
 import androidx.annotation.NonNull;
 import androidx.appcompat.app.AlertDialog;
 import androidx.fragment.app.Fragment;
+import androidx.preference.PreferenceManager;
 
 import org.lineageos.lineageparts.PartsActivity;
 import org.lineageos.lineageparts.R;
 import org.lineageos.lineageparts.search.BaseSearchIndexProvider;
 import org.lineageos.lineageparts.search.SearchIndexableRaw;
 import org.lineageos.lineageparts.search.Searchable;
+import org.lineageos.lineageparts.utils.BackgroundExecutor;
 
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.OutputStream;
 import java.text.NumberFormat;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Locale;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import java.util.zip.CRC32;
 
 public class ContributorsCloudFragment extends Fragment implements SearchView.OnQueryTextListener,
         SearchView.OnCloseListener, MenuItem.OnActionExpandListener, Searchable {
@@ -71,9 +71,18 @@ public class ContributorsCloudFragment extends Fragment implements SearchView.On
     private static final String TAG = "ContributorsCloud";
 
     private static final String DB_NAME = "contributors.db";
+    private static final String KEY_DB_MARKER = "contributors_db_marker";
+    private static final int BUFFER_SIZE = 64 * 1024;
 
     private static final String STATE_SELECTED_CONTRIBUTOR = "state_selected_contributor";
 
+    private static final String LOADER_TASK_KEY = "ContributorCloudLoaderTask";
+    private static final String SEARCH_TASK_KEY = "ContributorSearchTask";
+    private static final String USER_INFO_TASK_KEY = "ContributorUserInfoTask";
+
+    private static final long SEARCH_DELAY_MS = 150;
+    private static final float MAX_ZOOM_SCALE = 20f;
+
     private ContributorsCloudViewController mViewController;
     private ImageView mImageView;
     private View mLoadingView;
@@ -82,6 +91,15 @@ public class ContributorsCloudFragment extends Fragment implements SearchView.On
     private ContributorsAdapter mSearchAdapter;
 
     private SQLiteDatabase mDatabase;
+    private ContributorsCloudData mCloudData;
+    private ContributorsCloudDrawable mCloudDrawable;
+    private CancellationSignal mLoaderSignal;
+    private CancellationSignal mSearchSignal;
+    private CancellationSignal mUserInfoSignal;
+    // Set once the fragment is destroyed, so that no task opens the database again
+    private boolean mDatabaseClosed;
+    private ContributorsSearchIndex mSearchIndex;
+    private String mPendingQuery;
 
     private int mTotalContributors;
     private int mTotalCommits;
@@ -101,11 +119,6 @@ public class ContributorsCloudFragment extends Fragment implements SearchView.On
 
     private static final String KEY_PREFIX = "contributor_";
 
-    private static class ViewInfo {
-        Bitmap mBitmap;
-        float mFocusX;
-        float mFocusY;
-    }
 
     private static class ContributorsDataHolder {
         int mId;
@@ -147,7 +160,6 @@ public class ContributorsCloudFragment extends Fragment implements SearchView.On
     }
 
     private class ContributorCloudLoaderTask {
-        private ViewInfo mViewInfo;
         private final boolean mNotify;
         private final boolean mNavigate;
 
@@ -159,40 +171,47 @@ public class ContributorsCloudFragment extends Fragment implements SearchView.On
         public void execute() {
             mLoadingView.setAlpha(1f);
 
-            ExecutorService executor = Executors.newSingleThreadExecutor();
+            // A newer load supersedes the one in flight
+            final Context context = requireActivity().getApplicationContext();
             Handler handler = new Handler(Looper.getMainLooper());
-            executor.execute(() -> {
+            mLoaderSignal = BackgroundExecutor.get().executeExclusive(LOADER_TASK_KEY, signal -> {
                 Boolean result = Boolean.FALSE;
                 try {
-                    loadContributorsInfo(getActivity());
-                    loadUserInfo(getActivity());
-                    mViewInfo = generateViewInfo(requireActivity(), mSelectedContributor);
-                    if (mViewInfo != null && mViewInfo.mBitmap != null) {
+                    if (loadCloudData(context) != null) {
                         result = Boolean.TRUE;
                     }
+                    if (!signal.isCanceled()) {
+                        loadContributorsInfo(context);
+                    }
 
                 } catch (Exception ex) {
-                    Log.e(TAG, "Failed to generate cloud bitmap", ex);
+                    Log.e(TAG, "Failed to load cloud data", ex);
                 }
 
+                if (signal.isCanceled()) {
+                    return;
+                }
                 final Boolean finalResult = result;
                 handler.post(() -> {
+                    if (signal.isCanceled() || !isAdded()) {
+                        return;
+                    }
                     if (finalResult) {
-                        mImageView.setImageBitmap(mViewInfo.mBitmap);
+                        ContributorsCloudDrawable drawable = getCloudDrawable(requireActivity());
+                        drawable.setSelectedContributor(mSelectedContributor);
+                        mImageView.setImageDrawable(drawable);
                         mViewController.update();
                         if (mNotify) {
                             if (mNavigate) {
-                                onLoadCloudDataSuccess(mViewInfo.mFocusX, mViewInfo.mFocusY);
+                                float[] focus = computeFocus(mSelectedContributor);
+                                onLoadCloudDataSuccess(focus[0], focus[1]);
                             } else {
                                 onLoadCloudDataSuccess(-1, -1);
                             }
                         }
                     } else {
-                        mImageView.setImageBitmap(null);
+                        mImageView.setImageDrawable(null);
                         mViewController.update();
-                        if (mViewInfo != null && mViewInfo.mBitmap != null) {
-                            mViewInfo.mBitmap.recycle();
-                        }
                         if (mNotify) {
                             onLoadCloudDataFailed();
                         }
@@ -215,9 +234,38 @@ public class ContributorsCloudFragment extends Fragment implements SearchView.On
         }
     }
 
+    @Override
+    public void onDestroyView() {
+        super.onDestroyView();
+        mHandler.removeCallbacks(mSearchRunnable);
+        if (mLoaderSignal != null) {
+            mLoaderSignal.cancel();
+            mLoaderSignal = null;
+        }
+        if (mCloudDrawable != null) {
+            mCloudDrawable.release();
+            mCloudDrawable = null;
+        }
+    }
+
     @Override
     public void onDestroy() {
         super.onDestroy();
+        if (mSearchSignal != null) {
+            mSearchSignal.cancel();
+            mSearchSignal = null;
+        }
+        if (mUserInfoSignal != null) {
+            mUserInfoSignal.cancel();
+            mUserInfoSignal = null;
+        }
+        // Tasks still running hold their own reference, so the last of them closes it.
+        // This waits for the tasks inside the fragment lock, hence not on the main thread
+        BackgroundExecutor.get().execute(TAG, signal -> closeDatabase());
+    }
+
+    private synchronized void closeDatabase() {
+        mDatabaseClosed = true;
         if (mDatabase != null && mDatabase.isOpen()) {
             try {
                 mDatabase.close();
@@ -225,6 +273,7 @@ public class ContributorsCloudFragment extends Fragment implements SearchView.On
                 // Ignore
             }
         }
+        mDatabase = null;
     }
 
     @Override
@@ -272,9 +321,14 @@ public class ContributorsCloudFragment extends Fragment implements SearchView.On
                 mSearchView.setQuery("", false);
                 mSelectedContributor = -1;
 
-                // Load the data from the database and fill the image
-                ContributorCloudLoaderTask task = new ContributorCloudLoaderTask(false, false);
-                task.execute();
+                if (mCloudDrawable != null) {
+                    // Just remove the highlight from the current cloud
+                    mCloudDrawable.setSelectedContributor(mSelectedContributor);
+                } else {
+                    // Load the data from the database and fill the image
+                    ContributorCloudLoaderTask task = new ContributorCloudLoaderTask(false, false);
+                    task.execute();
+                }
                 break;
 
             case R.id.contributor_info:
@@ -299,8 +353,23 @@ public class ContributorsCloudFragment extends Fragment implements SearchView.On
         mFailedView= v.findViewById(R.id.contributors_cloud_failed);
         mImageView = v.findViewById(R.id.contributors_cloud_image);
         mViewController = new ContributorsCloudViewController(mImageView);
-        mViewController.setMaximumScale(20f);
+        mViewController.setMaximumScale(MAX_ZOOM_SCALE);
         mViewController.setMediumScale(7f);
+        mViewController.setOnMatrixChangeListener(rect -> {
+            if (mCloudDrawable != null) {
+                mCloudDrawable.setDisplayScale(
+                        rect.width() / ContributorsCloudData.CLOUD_SIZE);
+            }
+        });
+        mViewController.setOnPhotoTapListener((view, x, y) -> {
+            if (mCloudDrawable != null) {
+                int id = mCloudDrawable.findContributorAt(x * ContributorsCloudData.CLOUD_SIZE,
+                        y * ContributorsCloudData.CLOUD_SIZE);
+                if (id != -1) {
+                    onContributorTapped(id);
+                }
+            }
+        });
 
         mSearchResults = v.findViewById(R.id.contributors_cloud_search_results);
         mSearchAdapter = new ContributorsAdapter(getActivity());
@@ -335,6 +404,11 @@ public class ContributorsCloudFragment extends Fragment implements SearchView.On
     @Override
     public boolean onMenuItemActionExpand(MenuItem item) {
         if (item.getItemId() == mSearchMenuItem.getItemId()) {
+            // Get the search index ready while the user types
+            final Context context = requireActivity().getApplicationContext();
+            mSearchSignal = BackgroundExecutor.get().executeExclusive(SEARCH_TASK_KEY,
+                    signal -> loadSearchIndex(context, signal));
+
             animateFadeOutFadeIn(mImageView, mSearchResults);
             mContributorInfoMenuItem.setVisible(false);
             mContributionsInfoMenuItem.setVisible(false);
@@ -367,14 +441,37 @@ public class ContributorsCloudFragment extends Fragment implements SearchView.On
 
     @Override
     public boolean onQueryTextChange(String newText) {
-        List<ContributorsDataHolder> contributors = new ArrayList<>();
-        if (!TextUtils.isEmpty(newText) || newText.length() >= 3) {
-            contributors.addAll(performFilter(getActivity(), newText));
+        mPendingQuery = newText;
+        mHandler.removeCallbacks(mSearchRunnable);
+        if (TextUtils.isEmpty(newText)) {
+            updateSearchResults(new ArrayList<>());
+        } else {
+            // Wait for the user to stop typing before searching
+            mHandler.postDelayed(mSearchRunnable, SEARCH_DELAY_MS);
         }
+        return true;
+    }
+
+    private final Runnable mSearchRunnable = () -> {
+        final String query = mPendingQuery;
+        final Context context = requireActivity().getApplicationContext();
+
+        // A newer search supersedes the one in flight
+        mSearchSignal = BackgroundExecutor.get().executeExclusive(SEARCH_TASK_KEY, signal -> {
+            final List<ContributorsDataHolder> contributors =
+                    performFilter(context, query, signal);
+            mHandler.post(() -> {
+                if (!signal.isCanceled() && query.equals(mPendingQuery) && isAdded()) {
+                    updateSearchResults(contributors);
+                }
+            });
+        });
+    };
+
+    private void updateSearchResults(List<ContributorsDataHolder> contributors) {
         mSearchAdapter.clear();
         mSearchAdapter.addAll(contributors);
         mSearchAdapter.notifyDataSetChanged();
-        return true;
     }
 
     private void showMenuItems(boolean visible) {
@@ -453,125 +550,72 @@ public class ContributorsCloudFragment extends Fragment implements SearchView.On
         }
     }
 
-    private synchronized ViewInfo generateViewInfo(Context context, int selectedId) {
-        Bitmap bitmap = null;
-        float focusX = -1, focusY = -1;
-        final Resources res = context.getResources();
-
-        // Open the database
-        SQLiteDatabase db = getDatabase(context, true);
-        if (db == null) {
-            // We don't have a valid database reference
-            return null;
+    private synchronized ContributorsCloudData loadCloudData(Context context) {
+        if (mCloudData == null) {
+            // Try to map the packed metadata in place, without touching the database
+            mCloudData = ContributorsCloudData.load(context.getAssets());
         }
-
-        // Extract original image size
-        Cursor c = db.rawQuery("select value from info where key = ?;", new String[]{"orig_size"});
-        if (c == null || !c.moveToFirst()) {
-            // We don't have a valid cursor reference
-            return null;
+        if (mCloudData == null) {
+            // Open the database
+            SQLiteDatabase db = acquireDatabase(context);
+            if (db == null) {
+                // We don't have a valid database reference
+                return null;
+            }
+            try {
+                mCloudData = ContributorsCloudData.load(db);
+            } finally {
+                db.releaseReference();
+            }
         }
-        int osize = c.getInt(0);
-        c.close();
+        return mCloudData;
+    }
 
-        // Query the metadata table to extract all the commits information
-        c = db.rawQuery("select id, name, x, y, r, fs from metadata;", null);
-        if (c == null) {
-            // We don't have a valid cursor reference
-            return null;
-        }
-        try {
+    private ContributorsCloudDrawable getCloudDrawable(Context context) {
+        if (mCloudDrawable == null) {
+            final Resources res = context.getResources();
             TypedValue colorAccent = new TypedValue();
             context.getTheme().resolveAttribute(com.android.internal.R.attr.colorAccent,
                     colorAccent, true);
             int colorForeground = res.getColor(colorAccent.resourceId, context.getTheme());
             int colorSelected = res.getColor(R.color.contributors_cloud_selected_color,
                     context.getTheme());
-            Paint paint = new Paint(Paint.ANTI_ALIAS_FLAG | Paint.DITHER_FLAG);
-
-            // Create a bitmap large enough to hold the cloud (use large bitmap when available)
-            int bsize = hasLargeHeap() ? 2048 : 1024;
-            bitmap = Bitmap.createBitmap(bsize, bsize, Bitmap.Config.ARGB_8888);
-            Canvas canvas = new Canvas(bitmap);
-
-            // Draw every contributor name
-            while (c.moveToNext()) {
-                int id = c.getInt(c.getColumnIndexOrThrow("id"));
-
-                String name = c.getString(c.getColumnIndexOrThrow("name"));
-                float x = translate(c.getFloat(c.getColumnIndexOrThrow("x")), osize, bsize);
-                float y = translate(c.getFloat(c.getColumnIndexOrThrow("y")), osize, bsize);
-                int r = c.getInt(c.getColumnIndexOrThrow("r"));
-                float fs = translate(c.getFloat(c.getColumnIndexOrThrow("fs")), osize, bsize);
-                if (id < 0) {
-                    y -= translate(fs, osize, bsize);
-                }
-
-                // Choose the correct paint
-                paint.setColor(selectedId == id ? colorSelected : colorForeground);
-                paint.setTextSize(fs);
-
-                // Check text rotation
-                float w = 0f, h = 0f;
-                if (selectedId == id || r != 0) {
-                    Rect bounds = new Rect();
-                    paint.getTextBounds(name, 0, name.length(), bounds);
-                    h = bounds.height();
-                }
-                if (selectedId == id || r == -1) {
-                    w = paint.measureText(name);
-                }
-                if (r == 0) {
-                    // Horizontal
-                    canvas.drawText(name, x, y, paint);
-                } else {
-                    canvas.save();
-                    if (r == -1) {
-                        // Vertical (-90 rotation)
-                        canvas.translate(h, w - h);
-                        canvas.rotate(-90, x, y);
-                    } else {
-                        // Vertical (+90 rotation)
-                        canvas.translate(h/2, -h);
-                        canvas.rotate(90, x, y);
-                    }
-                    canvas.drawText(name, x, y, paint);
-                    canvas.restore();
-                }
-
-                // Calculate focus
-                if (selectedId == id) {
-                    int iw = mImageView.getWidth();
-                    int ih = mImageView.getHeight();
-                    int cx = iw / 2;
-                    int cy = ih / 2;
-                    int cbx = bsize / 2;
-                    int cby = bsize / 2;
-                    float cw;
-                    float ch;
-                    if (r == 0) {
-                        cw = translate(w, bsize, Math.min(iw, ih)) / 2;
-                        ch = translate(h, bsize, Math.min(iw, ih)) / 2;
-                    } else {
-                        cw = translate(h, bsize, Math.min(iw, ih)) / 2;
-                        ch = translate(w, bsize, Math.min(iw, ih)) / 2;
-                    }
-
-                    focusX = cx + translate(x - cbx, bsize, iw) + cw;
-                    focusY = cy + translate(y - cby, bsize, ih) + ch;
-                }
-            }
-
-        } finally {
-            c.close();
+            // The cloud fits the view at scale 1, so at full zoom one cloud unit spans up to
+            // this many pixels, and never less than the zoom itself
+            final DisplayMetrics metrics = res.getDisplayMetrics();
+            final float maxDisplayScale = MAX_ZOOM_SCALE * Math.max(1f,
+                    (float) Math.max(metrics.widthPixels, metrics.heightPixels)
+                            / ContributorsCloudData.CLOUD_SIZE);
+            mCloudDrawable = new ContributorsCloudDrawable(context, mCloudData,
+                    colorForeground, colorSelected, maxDisplayScale);
+        }
+        return mCloudDrawable;
+    }
+
+    private float[] computeFocus(int selectedId) {
+        float[] focus = new float[]{-1, -1};
+        RectF bounds = new RectF();
+        if (mCloudDrawable != null && mCloudDrawable.getContributorBounds(selectedId, bounds)) {
+            focus[0] = bounds.centerX();
+            focus[1] = bounds.centerY();
+            mViewController.mapPointsToBase(focus);
+        }
+        return focus;
+    }
+
+    /**
+     * Returns the database with a reference held for the caller, which must release it once
+     * done, so that the database outlives the fragment while tasks still use it.
+     */
+    private synchronized SQLiteDatabase acquireDatabase(Context context) {
+        if (mDatabaseClosed) {
+            return null;
         }
-
-        // Return the bitmap
-        ViewInfo viewInfo = new ViewInfo();
-        viewInfo.mBitmap = bitmap;
-        viewInfo.mFocusX = focusX;
-        viewInfo.mFocusY = focusY;
-        return viewInfo;
+        SQLiteDatabase db = getDatabase(context, true);
+        if (db != null) {
+            db.acquireReference();
+        }
+        return db;
     }
 
     private synchronized SQLiteDatabase getDatabase(Context context, boolean retryCopyIfOpenFails) {
@@ -593,7 +637,7 @@ public class ContributorsCloudFragment extends Fragment implements SearchView.On
                 }
 
                 if (retryCopyIfOpenFails) {
-                    extractContributorsCloudDatabase(context);
+                    extractContributorsCloudDatabase(context, true);
                     mDatabase = getDatabase(context, false);
                 }
             }
@@ -609,13 +653,28 @@ public class ContributorsCloudFragment extends Fragment implements SearchView.On
         mTotalCommits = -1;
         mLastUpdate = -1;
 
+        // Use the statistics of the packed metadata, if available
+        if (mCloudData != null && mCloudData.getLastUpdate() != -1) {
+            mTotalContributors = mCloudData.getTotalContributors();
+            mTotalCommits = mCloudData.getTotalCommits();
+            mLastUpdate = mCloudData.getLastUpdate();
+            return;
+        }
+
         // Open the database
-        SQLiteDatabase db = getDatabase(context, true);
+        SQLiteDatabase db = acquireDatabase(context);
         if (db == null) {
             // We don't have a valid database reference
             return;
         }
+        try {
+            loadContributorsInfo(db);
+        } finally {
+            db.releaseReference();
+        }
+    }
 
+    private void loadContributorsInfo(SQLiteDatabase db) {
         // Total contributors
         Cursor c = db.rawQuery("select count(*) from metadata where id > 0;", null);
         if (c == null || !c.moveToFirst()) {
@@ -644,16 +703,27 @@ public class ContributorsCloudFragment extends Fragment implements SearchView.On
         c.close();
     }
 
-    private void loadUserInfo(Context context) {
+    private void loadUserInfo(Context context, int contributorId) {
+        mContributorName = null;
+        mContributorNick = null;
+        mContributorCommits = 0;
+
         // Open the database
-        SQLiteDatabase db = getDatabase(context, true);
+        SQLiteDatabase db = acquireDatabase(context);
         if (db == null) {
             // We don't have a valid database reference
             return;
         }
+        try {
+            loadUserInfo(db, contributorId);
+        } finally {
+            db.releaseReference();
+        }
+    }
 
+    private void loadUserInfo(SQLiteDatabase db, int contributorId) {
         // Total contributors
-        String[] args = new String[]{String.valueOf(mSelectedContributor)};
+        String[] args = new String[]{String.valueOf(contributorId)};
         Cursor c = db.rawQuery("select m1.name, m1.username, m1.commits " +
                                "from metadata as m1 where m1.id = ?;", args);
         if (c == null || !c.moveToFirst()) {
@@ -667,6 +737,22 @@ public class ContributorsCloudFragment extends Fragment implements SearchView.On
     }
 
     private void showUserInfo(Context context) {
+        final Context appContext = context.getApplicationContext();
+        final int contributorId = mSelectedContributor;
+
+        // The query may have to open, or even extract, the database
+        mUserInfoSignal = BackgroundExecutor.get().executeExclusive(USER_INFO_TASK_KEY,
+                signal -> {
+            loadUserInfo(appContext, contributorId);
+            mHandler.post(() -> {
+                if (!signal.isCanceled() && isAdded()) {
+                    showUserInfoDialog(requireActivity());
+                }
+            });
+        });
+    }
+
+    private void showUserInfoDialog(Context context) {
         NumberFormat nf = NumberFormat.getNumberInstance(Locale.getDefault());
         String name = mContributorName != null ? mContributorName : "-";
         String nick = mContributorNick != null ? mContributorNick : "-";
@@ -701,83 +787,147 @@ public class ContributorsCloudFragment extends Fragment implements SearchView.On
         dialog.show();
     }
 
-    private List<ContributorsDataHolder> performFilter(Context context, String query) {
-        // Open the database
-        SQLiteDatabase db = getDatabase(context, false);
-        if (db == null) {
-            // We don't have a valid database reference
-            return new ArrayList<>();
+    private synchronized ContributorsSearchIndex loadSearchIndex(Context context,
+            CancellationSignal signal) {
+        if (mSearchIndex == null && !signal.isCanceled()) {
+            // Open the database, extracting it if needed: the cloud itself comes from the
+            // packed metadata, so nothing else may have extracted it yet
+            SQLiteDatabase db = acquireDatabase(context);
+            if (db == null) {
+                // We don't have a valid database reference
+                return null;
+            }
+            try {
+                mSearchIndex = ContributorsSearchIndex.build(db);
+            } finally {
+                db.releaseReference();
+            }
         }
+        return mSearchIndex;
+    }
 
-        // Total contributors
-        String[] args = new String[]{query.replaceAll("\\|", "")};
-        Cursor c = db.rawQuery("select id, name || case when username is null then '' " +
-                "else ' <'||username||'>' end contributor from metadata where lower(filter) like " +
-                "lower('%' || ? || '%') and id > 0 order by commits desc", args);
-        if (c == null) {
-            // We don't have a valid cursor reference
+    private List<ContributorsDataHolder> performFilter(Context context, String query,
+            CancellationSignal signal) {
+        ContributorsSearchIndex index = loadSearchIndex(context, signal);
+        if (index == null) {
+            // We don't have a valid search index
             return new ArrayList<>();
         }
+
         List<ContributorsDataHolder> results = new ArrayList<>();
-        while (c.moveToNext()) {
+        for (ContributorsSearchIndex.Result match : index.query(query, signal)) {
             ContributorsDataHolder result = new ContributorsDataHolder();
-            result.mId = c.getInt(0);
-            result.mLabel = c.getString(1);
+            result.mId = match.mId;
+            result.mLabel = match.mLabel;
             results.add(result);
         }
-        c.close();
         return results;
     }
 
+    private void onContributorTapped(int contributorId) {
+        mSelectedContributor = contributorId;
+        mCloudDrawable.setSelectedContributor(contributorId);
+        if (mContributorInfoMenuItem != null) {
+            mContributorInfoMenuItem.setVisible(true);
+        }
+    }
+
     private void onContributorSelected(ContributorsDataHolder contributor) {
         onContributorSelected(contributor.mId);
     }
 
     private void onContributorSelected(int contributorId) {
         mSelectedContributor = contributorId;
-        ContributorCloudLoaderTask task = new ContributorCloudLoaderTask(true, true);
-        task.execute();
+        if (mCloudDrawable != null) {
+            // Only repaint the highlight of the already rendered cloud
+            mCloudDrawable.setSelectedContributor(contributorId);
+            float[] focus = computeFocus(contributorId);
+            onLoadCloudDataSuccess(focus[0], focus[1]);
+        } else {
+            ContributorCloudLoaderTask task = new ContributorCloudLoaderTask(true, true);
+            task.execute();
+        }
         if (mSearchMenuItem != null) {
             mSearchMenuItem.collapseActionView();
         }
     }
 
-    private boolean hasLargeHeap() {
-        ActivityManager am = requireActivity().getSystemService(ActivityManager.class);
-        return am.getMemoryClass() >= 96;
-    }
 
-    private float translate(float v, int ssize, int dsize) {
-        return (v * dsize) / ssize;
-    }
+    /**
+     * Extracts the contributors database from the assets, unless the installed copy is
+     * already the one bundled with this build.
+     *
+     * @param force whether to extract the database even if the installed copy looks valid
+     */
+    public static synchronized void extractContributorsCloudDatabase(Context context,
+            boolean force) {
+        final SharedPreferences prefs = PreferenceManager.getDefaultSharedPreferences(context);
+        final File databasePath = context.getDatabasePath(DB_NAME);
+        final String marker = prefs.getString(KEY_DB_MARKER, null);
+        final String[] markerParts = marker != null ? marker.split("\\|") : null;
+        boolean validMarker = false;
+        if (markerParts != null && markerParts.length == 3) {
+            try {
+                validMarker = databasePath.length() == Long.parseLong(markerParts[1]);
+            } catch (NumberFormatException e) {
+                // A corrupt marker, extract the database again
+                Log.w(TAG, "Invalid contributors database marker: " + marker);
+            }
+        }
 
+        // Same build, and nobody touched the installed copy
+        if (!force && validMarker && Build.FINGERPRINT.equals(markerParts[0])) {
+            return;
+        }
 
-    public static void extractContributorsCloudDatabase(Context context) {
-        final int BUFFER = 1024;
-        InputStream is = null;
-        OutputStream os;
-        File databasePath = context.getDatabasePath(DB_NAME);
         try {
+            final AssetManager assets = context.getResources().getAssets();
+            final long checksum = computeAssetChecksum(assets);
+            if (!force && validMarker && Long.toHexString(checksum).equals(markerParts[2])) {
+                // The build changed, but the bundled database didn't
+                prefs.edit().putString(KEY_DB_MARKER, buildDbMarker(databasePath.length(),
+                        checksum)).apply();
+                return;
+            }
+
             //noinspection ResultOfMethodCallIgnored
             databasePath.getParentFile().mkdir();
-            is = context.getResources().getAssets().open(DB_NAME, AssetManager.ACCESS_BUFFER);
-            os = new FileOutputStream(databasePath);
-            int read = -1;
-            byte[] data = new byte[BUFFER];
-            while ((read = is.read(data, 0, BUFFER)) != -1) {
-                os.write(data, 0, read);
+            final File tmpPath = new File(databasePath.getPath() + ".tmp");
+            try (InputStream is = assets.open(DB_NAME, AssetManager.ACCESS_STREAMING);
+                 FileOutputStream os = new FileOutputStream(tmpPath)) {
+                byte[] data = new byte[BUFFER_SIZE];
+                int read;
+                while ((read = is.read(data)) != -1) {
+                    os.write(data, 0, read);
+                }
+                os.getFD().sync();
             }
+            if (!tmpPath.renameTo(databasePath)) {
+                //noinspection ResultOfMethodCallIgnored
+                tmpPath.delete();
+                throw new IOException("Cannot rename " + tmpPath + " to " + databasePath);
+            }
+            prefs.edit().putString(KEY_DB_MARKER, buildDbMarker(databasePath.length(),
+                    checksum)).apply();
         } catch (IOException ex) {
-            Log.e(TAG, "Failed to extract contributors database");
-        } finally {
-            if (is != null) {
-                try {
-                    is.close();
-                } catch (IOException ex) {
-                    // Ignore
-                }
+            Log.e(TAG, "Failed to extract contributors database", ex);
+        }
+    }
+
+    private static long computeAssetChecksum(AssetManager assets) throws IOException {
+        CRC32 crc = new CRC32();
+        try (InputStream is = assets.open(DB_NAME, AssetManager.ACCESS_STREAMING)) {
+            byte[] data = new byte[BUFFER_SIZE];
+            int read;
+            while ((read = is.read(data)) != -1) {
+                crc.update(data, 0, read);
             }
         }
+        return crc.getValue();
+    }
+
+    private static String buildDbMarker(long size, long checksum) {
+        return Build.FINGERPRINT + "|" + size + "|" + Long.toHexString(checksum);
     }
 
     public static final Searchable.SearchIndexProvider SEARCH_INDEX_DATA_PROVIDER =
@@ -813,5 +963,12 @@ public class ContributorsCloudFragment extends Fragment implements SearchView.On
 
                     return result;
                 }
+
+                @Override
+                public String getRawDataVersion(Context context) {
+                    // The marker changes every time a new database is extracted
+                    return PreferenceManager.getDefaultSharedPreferences(context)
+                            .getString(KEY_DB_MARKER, null);
+                }
     };
 }
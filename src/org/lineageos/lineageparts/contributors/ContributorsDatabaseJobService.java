@@ -0,0 +1,60 @@
+/*
+ * SPDX-FileCopyrightText: 2026 The LineageOS Project
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package org.lineageos.lineageparts.contributors;
+
+import android.app.job.JobInfo;
+import android.app.job.JobParameters;
+import android.app.job.JobScheduler;
+import android.app.job.JobService;
+import android.content.ComponentName;
+import android.content.Context;
+import android.os.CancellationSignal;
+import android.util.Log;
+
+import org.lineageos.lineageparts.utils.BackgroundExecutor;
+
+/**
+ * Extracts the contributors database in the background, out of the boot broadcast.
+ */
+public class ContributorsDatabaseJobService extends JobService {
+
+    private static final String TAG = ContributorsDatabaseJobService.class.getSimpleName();
+    private static final boolean DEBUG = Log.isLoggable(TAG, Log.DEBUG);
+
+    // Out of the range of ids used by the stats upload jobs
+    private static final int JOB_ID = 10001;
+
+    private CancellationSignal mSignal;
+
+    public static void schedule(Context context) {
+        JobScheduler js = context.getSystemService(JobScheduler.class);
+        js.schedule(new JobInfo.Builder(JOB_ID, new ComponentName(context,
+                ContributorsDatabaseJobService.class))
+                .setRequiresStorageNotLow(true)
+                .build());
+    }
+
+    @Override
+    public boolean onStartJob(JobParameters jobParameters) {
+        mSignal = BackgroundExecutor.get().execute(TAG, signal -> {
+            if (signal.isCanceled()) {
+                return;
+            }
+            ContributorsCloudFragment.extractContributorsCloudDatabase(this, false);
+            if (DEBUG) Log.d(TAG, "Contributors database is up to date");
+            jobFinished(jobParameters, false);
+        });
+        return true;
+    }
+
+    @Override
+    public boolean onStopJob(JobParameters jobParameters) {
+        if (mSignal != null) {
+            mSignal.cancel();
+        }
+        return true; // reschedule
+    }
+}
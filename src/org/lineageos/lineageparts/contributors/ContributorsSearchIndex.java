@@ -0,0 +1,168 @@
+/*
+ * SPDX-FileCopyrightText: 2026 The LineageOS Project
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package org.lineageos.lineageparts.contributors;
+
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.os.CancellationSignal;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * In-memory trigram index over the searchable text of the contributors.
+ *
+ * Contributors are ranked by commits when the index is built, and every posting list is
+ * sorted by rank, so the matches of a query are found already in the order they are shown.
+ * Queries shorter than a trigram fall back to a scan of the (pre-lowercased) filters.
+ */
+class ContributorsSearchIndex {
+
+    private static final int GRAM = 3;
+
+    private final int[] mIds;
+    private final String[] mLabels;
+    private final String[] mFilters;
+    private final Map<Long, int[]> mPostings;
+
+    static class Result {
+        final int mId;
+        final String mLabel;
+
+        Result(int id, String label) {
+            mId = id;
+            mLabel = label;
+        }
+    }
+
+    private ContributorsSearchIndex(int[] ids, String[] labels, String[] filters) {
+        mIds = ids;
+        mLabels = labels;
+        mFilters = filters;
+        mPostings = buildPostings(filters);
+    }
+
+    static ContributorsSearchIndex build(SQLiteDatabase db) {
+        Cursor c = db.rawQuery("select id, name || case when username is null then '' " +
+                "else ' <'||username||'>' end contributor, filter from metadata " +
+                "where id > 0 order by commits desc", null);
+        if (c == null) {
+            // We don't have a valid cursor reference
+            return null;
+        }
+        try {
+            final int count = c.getCount();
+            int[] ids = new int[count];
+            String[] labels = new String[count];
+            String[] filters = new String[count];
+            int i = 0;
+            while (c.moveToNext() && i < count) {
+                ids[i] = c.getInt(0);
+                labels[i] = c.getString(1);
+                String filter = c.getString(2);
+                filters[i] = filter != null ? normalize(filter) : "";
+                i++;
+            }
+            if (i < count) {
+                ids = Arrays.copyOf(ids, i);
+                labels = Arrays.copyOf(labels, i);
+                filters = Arrays.copyOf(filters, i);
+            }
+            return new ContributorsSearchIndex(ids, labels, filters);
+        } finally {
+            c.close();
+        }
+    }
+
+    /**
+     * @return the contributors whose filter contains the query, ordered by commits
+     */
+    List<Result> query(String query, CancellationSignal signal) {
+        final String q = normalize(query.replaceAll("\\|", ""));
+        List<Result> results = new ArrayList<>();
+        if (q.isEmpty()) {
+            return results;
+        }
+
+        if (q.length() < GRAM) {
+            for (int rank = 0; rank < mFilters.length; rank++) {
+                if (signal != null && signal.isCanceled()) {
+                    break;
+                }
+                if (mFilters[rank].contains(q)) {
+                    results.add(new Result(mIds[rank], mLabels[rank]));
+                }
+            }
+            return results;
+        }
+
+        // Every match contains all the trigrams of the query, so only the contributors of
+        // the shortest posting list need to be verified
+        int[] candidates = null;
+        for (int i = 0; i + GRAM <= q.length(); i++) {
+            int[] postings = mPostings.get(trigram(q, i));
+            if (postings == null) {
+                return results;
+            }
+            if (candidates == null || postings.length < candidates.length) {
+                candidates = postings;
+            }
+        }
+        for (int rank : candidates) {
+            if (signal != null && signal.isCanceled()) {
+                break;
+            }
+            if (mFilters[rank].contains(q)) {
+                results.add(new Result(mIds[rank], mLabels[rank]));
+            }
+        }
+        return results;
+    }
+
+    private static Map<Long, int[]> buildPostings(String[] filters) {
+        final Map<Long, int[]> postings = new HashMap<>();
+        final Map<Long, Integer> sizes = new HashMap<>();
+        for (int rank = 0; rank < filters.length; rank++) {
+            final String filter = filters[rank];
+            for (int i = 0; i + GRAM <= filter.length(); i++) {
+                final Long key = trigram(filter, i);
+                int[] list = postings.get(key);
+                int size = list != null ? sizes.get(key) : 0;
+                // Ranks are added in order, so a repeated trigram is always the last one
+                if (size > 0 && list[size - 1] == rank) {
+                    continue;
+                }
+                if (list == null) {
+                    list = new int[4];
+                } else if (size == list.length) {
+                    list = Arrays.copyOf(list, size * 2);
+                }
+                list[size] = rank;
+                postings.put(key, list);
+                sizes.put(key, size + 1);
+            }
+        }
+
+        for (Map.Entry<Long, int[]> entry : postings.entrySet()) {
+            entry.setValue(Arrays.copyOf(entry.getValue(), sizes.get(entry.getKey())));
+        }
+        return postings;
+    }
+
+    private static long trigram(String s, int start) {
+        return ((long) s.charAt(start) << 32)
+                | ((long) s.charAt(start + 1) << 16)
+                | s.charAt(start + 2);
+    }
+
+    private static String normalize(String s) {
+        return s.toLowerCase(Locale.ROOT);
+    }
+}
@@ -0,0 +1,105 @@
+/*
+ * SPDX-FileCopyrightText: 2026 The LineageOS Project
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package org.lineageos.lineageparts.gestures;
+
+import android.util.SparseArray;
+
+import java.io.PrintWriter;
+import java.io.StringWriter;
+
+/**
+ * Latency histograms of the touchscreen gesture actions, from the key event reaching the
+ * KeyHandler to the action being done, along with the proximity check and dropped
+ * gesture counters. Used to tune config_proximityCheckTimeout per device.
+ */
+class GestureLatencyStats {
+
+    // Upper bounds of the histogram buckets, the last bucket holds everything above
+    private static final int[] BUCKET_BOUNDS_MS = { 10, 25, 50, 100, 200, 400, 800, 1600 };
+
+    private static class ActionStats {
+        final int[] mBuckets = new int[BUCKET_BOUNDS_MS.length + 1];
+        int mCount;
+        long mTotalMs;
+        long mMaxMs;
+    }
+
+    private final SparseArray<ActionStats> mActions = new SparseArray<>();
+    private int mProximityChecks;
+    private int mProximityTimeouts;
+    private int mProximityBlocked;
+    private int mDropped;
+
+    synchronized void recordAction(int action, long latencyMs) {
+        ActionStats stats = mActions.get(action);
+        if (stats == null) {
+            stats = new ActionStats();
+            mActions.put(action, stats);
+        }
+        int bucket = 0;
+        while (bucket < BUCKET_BOUNDS_MS.length && latencyMs > BUCKET_BOUNDS_MS[bucket]) {
+            bucket++;
+        }
+        stats.mBuckets[bucket]++;
+        stats.mCount++;
+        stats.mTotalMs += latencyMs;
+        stats.mMaxMs = Math.max(stats.mMaxMs, latencyMs);
+    }
+
+    synchronized void recordProximityCheck() {
+        mProximityChecks++;
+    }
+
+    /* the sensor didn't answer within config_proximityCheckTimeout. */
+    synchronized void recordProximityTimeout() {
+        mProximityTimeouts++;
+    }
+
+    /* the sensor reported something near, so the gesture was ignored. */
+    synchronized void recordProximityBlocked() {
+        mProximityBlocked++;
+    }
+
+    /* a gesture came in while the previous one was still pending. */
+    synchronized void recordDropped() {
+        mDropped++;
+    }
+
+    synchronized void dump(PrintWriter pw) {
+        pw.println("Touchscreen gesture latency:");
+        pw.println("  proximityChecks=" + mProximityChecks
+                + " proximityTimeouts=" + mProximityTimeouts
+                + " proximityBlocked=" + mProximityBlocked
+                + " dropped=" + mDropped);
+        for (int i = 0; i < mActions.size(); i++) {
+            final ActionStats stats = mActions.valueAt(i);
+            final StringBuilder sb = new StringBuilder();
+            sb.append("  action ").append(mActions.keyAt(i))
+                    .append(": count=").append(stats.mCount)
+                    .append(" avgMs=").append(stats.mTotalMs / stats.mCount)
+                    .append(" maxMs=").append(stats.mMaxMs)
+                    .append(" histogram=");
+            for (int bucket = 0; bucket < stats.mBuckets.length; bucket++) {
+                if (bucket > 0) {
+                    sb.append(' ');
+                }
+                sb.append(bucket < BUCKET_BOUNDS_MS.length
+                        ? "<=" + BUCKET_BOUNDS_MS[bucket]
+                        : ">" + BUCKET_BOUNDS_MS[BUCKET_BOUNDS_MS.length - 1]);
+                sb.append(':').append(stats.mBuckets[bucket]);
+            }
+            pw.println(sb);
+        }
+    }
+
+    String dumpToString() {
+        final StringWriter sw = new StringWriter();
+        try (PrintWriter pw = new PrintWriter(sw)) {
+            dump(pw);
+        }
+        return sw.toString();
+    }
+}
@@ -8,12 +8,14 @@ package org.lineageos.lineageparts.gestures;
 
 import android.content.ActivityNotFoundException;
 import android.content.BroadcastReceiver;
+import android.content.ContentResolver;
 import android.content.Context;
 import android.content.Intent;
 import android.content.IntentFilter;
 import android.content.pm.PackageManager;
 import android.content.pm.ResolveInfo;
 import android.content.res.Resources;
+import android.database.ContentObserver;
 import android.hardware.camera2.CameraAccessException;
 import android.hardware.camera2.CameraCharacteristics;
 import android.hardware.camera2.CameraManager;
@@ -31,6 +33,7 @@ import android.os.Message;
 import android.os.PowerManager;
 import android.os.PowerManager.WakeLock;
 import android.os.SystemClock;
+import android.os.Trace;
 import android.os.UserHandle;
 import android.os.VibrationEffect;
 import android.os.Vibrator;
@@ -39,6 +42,7 @@ import android.util.Log;
 import android.util.SparseIntArray;
 import android.view.KeyEvent;
 
+import com.android.internal.os.BackgroundThread;
 import com.android.internal.os.DeviceKeyHandler;
 
 import lineageos.providers.LineageSettings;
@@ -48,12 +52,24 @@ import java.util.List;
 public class KeyHandler implements DeviceKeyHandler {
 
     private static final String TAG = KeyHandler.class.getSimpleName();
+    private static final boolean DEBUG = Log.isLoggable(TAG, Log.DEBUG);
 
     private static final String GESTURE_WAKEUP_REASON = "lineageparts-gesture-wakeup";
     private static final String PULSE_ACTION = "com.android.systemui.doze.pulse";
     private static final int GESTURE_REQUEST = 0;
+    // arg2 of a gesture request sent delayed, to fire if the proximity check times out
+    // Message object of the gestures waiting for the proximity check
+    private static final Object PROXIMITY_PENDING = new Object();
+    private static final String TRACE_GESTURE = "TouchscreenGesture";
+    private static final String TRACE_ACTION = "TouchscreenGesture#handleAction";
     private static final int GESTURE_WAKELOCK_DURATION = 3000;
     private static final int EVENT_PROCESS_WAKELOCK_DURATION = 500;
+    private static final int LAUNCH_FLAGS = Intent.FLAG_ACTIVITY_NEW_TASK
+            | Intent.FLAG_ACTIVITY_SINGLE_TOP
+            | Intent.FLAG_ACTIVITY_CLEAR_TOP;
+
+    private static final VibrationEffect HAPTIC_FEEDBACK_EFFECT =
+            VibrationEffect.createOneShot(50, VibrationEffect.DEFAULT_AMPLITUDE);
 
     private final Context mContext;
     private final AudioManager mAudioManager;
@@ -71,9 +87,62 @@ public class KeyHandler implements DeviceKeyHandler {
     private boolean mDefaultProximity;
     private int mProximityTimeOut;
 
-    private String mRearCameraId;
+    private volatile String mRearCameraId;
     private boolean mTorchEnabled;
 
+    // Settings read on the gesture path, kept up to date by mSettingsObserver
+    private volatile boolean mSetupCompleted;
+    private volatile boolean mProximityWakeEnabled;
+    private volatile boolean mHapticFeedbackEnabled;
+    private volatile boolean mDozeEnabled;
+
+    // Intents which don't depend on the installed packages are built only once
+    private final Intent mCameraGestureIntent =
+            new Intent(lineageos.content.Intent.ACTION_SCREEN_CAMERA_GESTURE);
+    private final Intent mDozePulseIntent = new Intent(PULSE_ACTION);
+    private final Intent mDialerIntent = new Intent(Intent.ACTION_DIAL, null)
+            .addFlags(LAUNCH_FLAGS);
+
+    // Launch intents resolved ahead of time, and again when packages change
+    private final Object mLaunchIntentsLock = new Object();
+    private boolean mLaunchIntentsResolved;
+    private volatile Intent mBrowserIntent;
+    private volatile Intent mEmailIntent;
+    private volatile Intent mMessagesIntent;
+
+    private final ProximityListener mProximityListener = new ProximityListener();
+    private final GestureLatencyStats mLatencyStats = new GestureLatencyStats();
+    // Only accessed on the input dispatch thread, each gesture passes its own in its message
+    private int mGestureTraceCookie;
+
+    private final ContentObserver mSettingsObserver;
+
+    private final BroadcastReceiver mPackageReceiver = new BroadcastReceiver() {
+        @Override
+        public void onReceive(Context context, Intent intent) {
+            // Delivered on the background thread
+            resolveLaunchIntents();
+        }
+    };
+
+    private final CameraManager.AvailabilityCallback mCameraAvailabilityCallback =
+            new CameraManager.AvailabilityCallback() {
+        @Override
+        public void onCameraAvailable(String cameraId) {
+            // The camera service may not have been up when the handler was created
+            if (mRearCameraId == null) {
+                getRearCameraId();
+            }
+        }
+    };
+
+    private final BroadcastReceiver mStatsReceiver = new BroadcastReceiver() {
+        @Override
+        public void onReceive(Context context, Intent intent) {
+            setResultData(mLatencyStats.dumpToString());
+        }
+    };
+
     private final BroadcastReceiver mUpdateReceiver = new BroadcastReceiver() {
         @Override
         public void onReceive(Context context, Intent intent) {
@@ -125,6 +194,55 @@ public class KeyHandler implements DeviceKeyHandler {
         mContext.registerReceiver(mUpdateReceiver,
                 new IntentFilter(TouchscreenGestureConstants.UPDATE_PREFS_ACTION),
                 Context.RECEIVER_NOT_EXPORTED);
+        mContext.registerReceiver(mStatsReceiver,
+                new IntentFilter(TouchscreenGestureConstants.DUMP_STATS_ACTION), null,
+                BackgroundThread.getHandler(), Context.RECEIVER_NOT_EXPORTED);
+
+        mSettingsObserver = new ContentObserver(mEventHandler) {
+            @Override
+            public void onChange(boolean selfChange) {
+                updateSettings();
+            }
+        };
+        final ContentResolver resolver = mContext.getContentResolver();
+        resolver.registerContentObserver(Settings.Secure.getUriFor(
+                Settings.Secure.USER_SETUP_COMPLETE), false, mSettingsObserver);
+        resolver.registerContentObserver(Settings.Secure.getUriFor(
+                Settings.Secure.DOZE_ENABLED), false, mSettingsObserver);
+        resolver.registerContentObserver(LineageSettings.System.getUriFor(
+                LineageSettings.System.PROXIMITY_ON_WAKE), false, mSettingsObserver);
+        resolver.registerContentObserver(LineageSettings.System.getUriFor(
+                LineageSettings.System.TOUCHSCREEN_GESTURE_HAPTIC_FEEDBACK), false,
+                mSettingsObserver);
+        updateSettings();
+
+        final IntentFilter packageFilter = new IntentFilter();
+        packageFilter.addAction(Intent.ACTION_PACKAGE_ADDED);
+        packageFilter.addAction(Intent.ACTION_PACKAGE_CHANGED);
+        packageFilter.addAction(Intent.ACTION_PACKAGE_REMOVED);
+        packageFilter.addDataScheme("package");
+        mContext.registerReceiver(mPackageReceiver, packageFilter, null,
+                BackgroundThread.getHandler());
+        mCameraManager.registerAvailabilityCallback(mCameraAvailabilityCallback,
+                BackgroundThread.getHandler());
+
+        // Resolve the launch intents and the rear camera out of the gesture path
+        BackgroundThread.getHandler().post(() -> {
+            resolveLaunchIntents();
+            getRearCameraId();
+        });
+    }
+
+    private void updateSettings() {
+        final ContentResolver resolver = mContext.getContentResolver();
+        mSetupCompleted = Settings.Secure.getInt(resolver,
+                Settings.Secure.USER_SETUP_COMPLETE, 0) != 0;
+        mDozeEnabled = Settings.Secure.getInt(resolver,
+                Settings.Secure.DOZE_ENABLED, 1) != 0;
+        mProximityWakeEnabled = LineageSettings.System.getInt(resolver,
+                LineageSettings.System.PROXIMITY_ON_WAKE, mDefaultProximity ? 1 : 0) == 1;
+        mHapticFeedbackEnabled = LineageSettings.System.getInt(resolver,
+                LineageSettings.System.TOUCHSCREEN_GESTURE_HAPTIC_FEEDBACK, 1) != 0;
     }
 
     private class TorchModeCallback extends CameraManager.TorchCallback {
@@ -143,64 +261,82 @@ public class KeyHandler implements DeviceKeyHandler {
 
     public KeyEvent handleKeyEvent(final KeyEvent event) {
         final int action = mActionMapping.get(event.getScanCode(), -1);
-        if (action < 0 || event.getAction() != KeyEvent.ACTION_UP || !hasSetupCompleted()) {
+        if (action < 0 || event.getAction() != KeyEvent.ACTION_UP || !mSetupCompleted) {
             return event;
         }
 
-        if (action != 0 && !mEventHandler.hasMessages(GESTURE_REQUEST)) {
-            final Message msg = getMessageForAction(action);
-            final boolean proxWakeEnabled = LineageSettings.System.getInt(
-                    mContext.getContentResolver(),
-                    LineageSettings.System.PROXIMITY_ON_WAKE, mDefaultProximity ? 1 : 0) == 1;
-            if (mProximityWakeSupported && proxWakeEnabled && mProximitySensor != null) {
+        if (action != 0 && mEventHandler.hasMessages(GESTURE_REQUEST)) {
+            mLatencyStats.recordDropped();
+        } else if (action != 0) {
+            final long eventTime = event.getEventTime();
+            final int cookie = ++mGestureTraceCookie;
+            Trace.asyncTraceBegin(Trace.TRACE_TAG_INPUT, TRACE_GESTURE, cookie);
+            if (mProximityWakeSupported && mProximityWakeEnabled && mProximitySensor != null) {
                 mGestureWakeLock.acquire(2L * mProximityTimeOut);
-                mEventHandler.sendMessageDelayed(msg, mProximityTimeOut);
-                processEvent(action);
+                mEventHandler.sendMessageAtTime(
+                        getMessageForAction(action, cookie, PROXIMITY_PENDING),
+                        eventTime + mProximityTimeOut);
+                mLatencyStats.recordProximityCheck();
+                processEvent(action, eventTime, cookie);
             } else {
                 mGestureWakeLock.acquire(EVENT_PROCESS_WAKELOCK_DURATION);
-                mEventHandler.sendMessage(msg);
+                mEventHandler.sendMessageAtTime(
+                        getMessageForAction(action, cookie, null), eventTime);
             }
         }
 
         return null;
     }
 
-    private boolean hasSetupCompleted() {
-        return Settings.Secure.getInt(mContext.getContentResolver(),
-                Settings.Secure.USER_SETUP_COMPLETE, 0) != 0;
+    private void processEvent(final int action, final long eventTime, final int cookie) {
+        // Further gestures are dropped until this one is handled, so these aren't
+        // overwritten while the check is pending
+        mProximityListener.mAction = action;
+        mProximityListener.mEventTime = eventTime;
+        mProximityListener.mCookie = cookie;
+        mSensorManager.registerListener(mProximityListener, mProximitySensor,
+                SensorManager.SENSOR_DELAY_FASTEST);
     }
 
-    private void processEvent(final int action) {
-        mSensorManager.registerListener(new SensorEventListener() {
-            @Override
-            public void onSensorChanged(SensorEvent event) {
-                if (mProximityWakeLock.isHeld()) {
-                    mProximityWakeLock.release();
-                }
-                mSensorManager.unregisterListener(this);
-                if (!mEventHandler.hasMessages(GESTURE_REQUEST)) {
-                    // The sensor took too long; ignoring
-                    return;
-                }
-                mEventHandler.removeMessages(GESTURE_REQUEST);
-                if (event.values[0] >= mProximitySensor.getMaximumRange()) {
-                    Message msg = getMessageForAction(action);
-                    mEventHandler.sendMessage(msg);
-                }
-            }
+    private class ProximityListener implements SensorEventListener {
+        // Gesture waiting for the proximity check
+        volatile int mAction;
+        volatile long mEventTime;
+        volatile int mCookie;
 
-            @Override
-            public void onAccuracyChanged(Sensor sensor, int accuracy) {
-                // Ignore
+        @Override
+        public void onSensorChanged(SensorEvent event) {
+            if (mProximityWakeLock.isHeld()) {
+                mProximityWakeLock.release();
+            }
+            mSensorManager.unregisterListener(this);
+            if (!mEventHandler.hasMessages(GESTURE_REQUEST)) {
+                // The sensor took too long; ignoring
+                return;
             }
+            mEventHandler.removeMessages(GESTURE_REQUEST);
+            if (event.values[0] >= mProximitySensor.getMaximumRange()) {
+                mEventHandler.sendMessageAtTime(
+                        getMessageForAction(mAction, mCookie, null), mEventTime);
+            } else {
+                mLatencyStats.recordProximityBlocked();
+                Trace.asyncTraceEnd(Trace.TRACE_TAG_INPUT, TRACE_GESTURE, mCookie);
+            }
+        }
 
-        }, mProximitySensor, SensorManager.SENSOR_DELAY_FASTEST);
+        @Override
+        public void onAccuracyChanged(Sensor sensor, int accuracy) {
+            // Ignore
+        }
     }
 
-    private Message getMessageForAction(final int action) {
-        Message msg = mEventHandler.obtainMessage(GESTURE_REQUEST);
-        msg.arg1 = action;
-        return msg;
+    /**
+     * Messages are sent at the time of the gesture event, so that they carry it along with
+     * the trace cookie of the gesture.
+     */
+    private Message getMessageForAction(final int action, final int cookie, final Object obj) {
+        // Messages come from the global pool, so this doesn't allocate
+        return mEventHandler.obtainMessage(GESTURE_REQUEST, action, cookie, obj);
     }
 
     private class EventHandler extends Handler {
@@ -211,6 +347,14 @@ public class KeyHandler implements DeviceKeyHandler {
 
         @Override
         public void handleMessage(final Message msg) {
+            long eventTime = msg.getWhen();
+            if (msg.obj == PROXIMITY_PENDING) {
+                // The proximity sensor didn't answer in time
+                mLatencyStats.recordProximityTimeout();
+                eventTime -= mProximityTimeOut;
+            }
+
+            Trace.traceBegin(Trace.TRACE_TAG_INPUT, TRACE_ACTION);
             switch (msg.arg1) {
                 case TouchscreenGestureConstants.ACTION_CAMERA:
                     launchCamera();
@@ -249,45 +393,49 @@ public class KeyHandler implements DeviceKeyHandler {
                     launchDozePulse();
                     break;
             }
+            Trace.traceEnd(Trace.TRACE_TAG_INPUT);
+            Trace.asyncTraceEnd(Trace.TRACE_TAG_INPUT, TRACE_GESTURE, msg.arg2);
+
+            final long latency = SystemClock.uptimeMillis() - eventTime;
+            mLatencyStats.recordAction(msg.arg1, latency);
+            if (DEBUG) {
+                Log.d(TAG, "Gesture action " + msg.arg1 + " handled "
+                        + latency + "ms after the event");
+            }
         }
     }
 
     private void launchCamera() {
         mGestureWakeLock.acquire(GESTURE_WAKELOCK_DURATION);
-        final Intent intent = new Intent(lineageos.content.Intent.ACTION_SCREEN_CAMERA_GESTURE);
-        mContext.sendBroadcastAsUser(intent, UserHandle.CURRENT,
+        mContext.sendBroadcastAsUser(mCameraGestureIntent, UserHandle.CURRENT,
                 Manifest.permission.STATUS_BAR_SERVICE);
         doHapticFeedback();
     }
 
     private void launchBrowser() {
         performWakeUp();
-        final Intent intent = getLaunchableIntent(
-                new Intent(Intent.ACTION_VIEW, Uri.parse("http:")));
-        startActivitySafely(intent);
+        ensureLaunchIntentsResolved();
+        startActivitySafely(mBrowserIntent);
         doHapticFeedback();
     }
 
     private void launchDialer() {
         performWakeUp();
-        final Intent intent = new Intent(Intent.ACTION_DIAL, null);
-        startActivitySafely(intent);
+        startActivitySafely(mDialerIntent);
         doHapticFeedback();
     }
 
     private void launchEmail() {
         performWakeUp();
-        final Intent intent = getLaunchableIntent(
-                new Intent(Intent.ACTION_VIEW, Uri.parse("mailto:")));
-        startActivitySafely(intent);
+        ensureLaunchIntentsResolved();
+        startActivitySafely(mEmailIntent);
         doHapticFeedback();
     }
 
     private void launchMessages() {
         performWakeUp();
-        final Intent intent = getLaunchableIntent(
-                new Intent(Intent.ACTION_VIEW, Uri.parse("sms:")));
-        startActivitySafely(intent);
+        ensureLaunchIntentsResolved();
+        startActivitySafely(mMessagesIntent);
         doHapticFeedback();
     }
 
@@ -339,12 +487,9 @@ public class KeyHandler implements DeviceKeyHandler {
     }
 
     private void launchDozePulse() {
-        final boolean dozeEnabled = Settings.Secure.getInt(mContext.getContentResolver(),
-                Settings.Secure.DOZE_ENABLED, 1) != 0;
-        if (dozeEnabled) {
+        if (mDozeEnabled) {
             mGestureWakeLock.acquire(GESTURE_WAKELOCK_DURATION);
-            final Intent intent = new Intent(PULSE_ACTION);
-            mContext.sendBroadcastAsUser(intent, UserHandle.CURRENT);
+            mContext.sendBroadcastAsUser(mDozePulseIntent, UserHandle.CURRENT);
             doHapticFeedback();
         }
     }
@@ -367,12 +512,8 @@ public class KeyHandler implements DeviceKeyHandler {
             Log.w(TAG, "No intent passed to startActivitySafely");
             return;
         }
-        intent.addFlags(Intent.FLAG_ACTIVITY_NEW_TASK
-                | Intent.FLAG_ACTIVITY_SINGLE_TOP
-                | Intent.FLAG_ACTIVITY_CLEAR_TOP);
         try {
-            final UserHandle user = new UserHandle(UserHandle.USER_CURRENT);
-            mContext.startActivityAsUser(intent, null, user);
+            mContext.startActivityAsUser(intent, null, UserHandle.CURRENT);
         } catch (ActivityNotFoundException e) {
             // Ignore
         }
@@ -383,17 +524,13 @@ public class KeyHandler implements DeviceKeyHandler {
             return;
         }
 
-        if (mAudioManager.getRingerMode() != AudioManager.RINGER_MODE_SILENT) {
-            final boolean enabled = LineageSettings.System.getInt(mContext.getContentResolver(),
-                    LineageSettings.System.TOUCHSCREEN_GESTURE_HAPTIC_FEEDBACK, 1) != 0;
-            if (enabled) {
-                mVibrator.vibrate(VibrationEffect.createOneShot(50,
-                        VibrationEffect.DEFAULT_AMPLITUDE));
-            }
+        if (mHapticFeedbackEnabled
+                && mAudioManager.getRingerMode() != AudioManager.RINGER_MODE_SILENT) {
+            mVibrator.vibrate(HAPTIC_FEEDBACK_EFFECT);
         }
     }
 
-    private String getRearCameraId() {
+    private synchronized String getRearCameraId() {
         if (mRearCameraId == null) {
             try {
                 for (final String cameraId : mCameraManager.getCameraIdList()) {
@@ -412,6 +549,30 @@ public class KeyHandler implements DeviceKeyHandler {
         return mRearCameraId;
     }
 
+    private void ensureLaunchIntentsResolved() {
+        synchronized (mLaunchIntentsLock) {
+            if (!mLaunchIntentsResolved) {
+                // Only happens if a gesture comes in before the first resolution finished
+                resolveLaunchIntents();
+            }
+        }
+    }
+
+    private void resolveLaunchIntents() {
+        final Intent browserIntent = getLaunchableIntent(
+                new Intent(Intent.ACTION_VIEW, Uri.parse("http:")));
+        final Intent emailIntent = getLaunchableIntent(
+                new Intent(Intent.ACTION_VIEW, Uri.parse("mailto:")));
+        final Intent messagesIntent = getLaunchableIntent(
+                new Intent(Intent.ACTION_VIEW, Uri.parse("sms:")));
+        synchronized (mLaunchIntentsLock) {
+            mBrowserIntent = browserIntent;
+            mEmailIntent = emailIntent;
+            mMessagesIntent = messagesIntent;
+            mLaunchIntentsResolved = true;
+        }
+    }
+
     private Intent getLaunchableIntent(Intent intent) {
         PackageManager pm = mContext.getPackageManager();
         List<ResolveInfo> resInfo = pm.queryIntentActivities(intent,
@@ -419,6 +580,8 @@ public class KeyHandler implements DeviceKeyHandler {
         if (resInfo.isEmpty()) {
             return null;
         }
-        return pm.getLaunchIntentForPackage(resInfo.get(0).activityInfo.packageName);
+        Intent launchIntent = pm.getLaunchIntentForPackage(
+                resInfo.get(0).activityInfo.packageName);
+        return launchIntent != null ? launchIntent.addFlags(LAUNCH_FLAGS) : null;
     }
 }
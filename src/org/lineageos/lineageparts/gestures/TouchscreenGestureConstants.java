@@ -13,6 +13,8 @@ class TouchscreenGestureConstants {
     static final String UPDATE_EXTRA_KEYCODE_MAPPING = "keycode_mappings";
     // Broadcast extra: assigned actions (int[]: key = gesture ID, value = action)
     static final String UPDATE_EXTRA_ACTION_MAPPING = "action_mappings";
+    // Ordered broadcast action to fetch the gesture latency stats as result data
+    static final String DUMP_STATS_ACTION = "org.lineageos.lineageparts.gestures.DUMP_STATS";
 
     // Touchscreen gesture actions
     static final int ACTION_FLASHLIGHT = 1;
@@ -6,10 +6,13 @@
 
 package org.lineageos.lineageparts.gestures;
 
+import android.content.BroadcastReceiver;
 import android.content.Context;
 import android.content.Intent;
 import android.content.SharedPreferences;
 import android.os.Bundle;
+import android.os.Handler;
+import android.os.Looper;
 import android.os.UserHandle;
 import android.util.ArraySet;
 
@@ -25,8 +28,11 @@ import org.lineageos.lineageparts.search.BaseSearchIndexProvider;
 import org.lineageos.lineageparts.search.Searchable;
 import org.lineageos.lineageparts.utils.ResourceUtils;
 
+import java.io.PrintWriter;
 import java.lang.System;
 import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
 
 public class TouchscreenGestureSettings extends SettingsPreferenceFragment
         implements Searchable {
@@ -37,6 +43,7 @@ public class TouchscreenGestureSettings extends SettingsPreferenceFragment
     private static final String KEY_TOUCHSCREEN_GESTURE_HAPTIC_FEEDBACK =
             "touchscreen_gesture_haptic_feedback";
     private static final String TOUCHSCREEN_GESTURE_TITLE = KEY_TOUCHSCREEN_GESTURE + "_%s_title";
+    private static final long DUMP_STATS_TIMEOUT_MS = 2000;
 
     private TouchscreenGesture[] mTouchscreenGestures;
 
@@ -202,6 +209,35 @@ public class TouchscreenGestureSettings extends SettingsPreferenceFragment
         context.sendBroadcastAsUser(intent, UserHandle.CURRENT);
     }
 
+    /**
+     * Prints the gesture latency stats collected by the key handler, which lives in
+     * the system server. Must not be called on the main thread.
+     */
+    public static void dumpLatencyStats(final Context context, final PrintWriter pw) {
+        if (!isTouchscreenGesturesSupported(context)) {
+            return;
+        }
+
+        final Intent intent = new Intent(TouchscreenGestureConstants.DUMP_STATS_ACTION);
+        intent.setFlags(Intent.FLAG_RECEIVER_REGISTERED_ONLY);
+        final CountDownLatch latch = new CountDownLatch(1);
+        final String[] result = new String[1];
+        context.sendOrderedBroadcastAsUser(intent, UserHandle.CURRENT, null,
+                new BroadcastReceiver() {
+                    @Override
+                    public void onReceive(Context context, Intent intent) {
+                        result[0] = getResultData();
+                        latch.countDown();
+                    }
+                }, new Handler(Looper.getMainLooper()), 0, null, null);
+        try {
+            latch.await(DUMP_STATS_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        pw.print(result[0] != null ? result[0] : "Touchscreen gesture latency: unavailable\n");
+    }
+
     public static final Searchable.SearchIndexProvider SEARCH_INDEX_DATA_PROVIDER =
             new BaseSearchIndexProvider() {
 
@@ -22,6 +22,8 @@ import com.android.settingslib.widget.MainSwitchPreference;
 import org.lineageos.lineageparts.R;
 import org.lineageos.lineageparts.SettingsPreferenceFragment;
 
+import java.util.Set;
+
 public class DisplayRotation extends SettingsPreferenceFragment
         implements CompoundButton.OnCheckedChangeListener {
     private static final String TAG = "DisplayRotation";
@@ -73,8 +75,8 @@ public class DisplayRotation extends SettingsPreferenceFragment
     }
 
     @Override
-    public void onSettingsChanged(Uri contentUri) {
-        super.onSettingsChanged(contentUri);
+    protected void onSettingsChanged(Set<Uri> contentUris) {
+        super.onSettingsChanged(contentUris);
         updateAccelerometerRotationSwitch();
     }
 
@@ -159,7 +159,7 @@ public class ButtonSettings extends SettingsPreferenceFragment
         final ContentResolver resolver = requireActivity().getContentResolver();
         final PreferenceScreen prefScreen = getPreferenceScreen();
 
-        final boolean hasPowerKey = DeviceUtils.hasPowerKey();
+        final boolean hasPowerKey = DeviceUtils.hasPowerKey(getActivity());
         final boolean hasHomeKey = DeviceUtils.hasHomeKey(getActivity());
         final boolean hasBackKey = DeviceUtils.hasBackKey(getActivity());
         final boolean hasMenuKey = DeviceUtils.hasMenuKey(getActivity());
@@ -9,12 +9,14 @@ package org.lineageos.lineageparts.lineagestats;
 import android.app.job.JobParameters;
 import android.app.job.JobService;
 import android.net.Uri;
+import android.os.CancellationSignal;
 import android.os.Handler;
 import android.os.Looper;
 import android.os.PersistableBundle;
 import android.util.ArrayMap;
 import android.util.Log;
 import org.lineageos.lineageparts.R;
+import org.lineageos.lineageparts.utils.BackgroundExecutor;
 import org.json.JSONException;
 import org.json.JSONObject;
 
@@ -29,8 +31,6 @@ import java.net.URL;
 import java.nio.charset.StandardCharsets;
 import java.util.Collections;
 import java.util.Map;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
 
 public class StatsUploadJobService extends JobService {
 
@@ -86,16 +86,15 @@ public class StatsUploadJobService extends JobService {
     private class StatsUploadTask {
 
         private final JobParameters mJobParams;
-        private boolean mCancelled;
+        private CancellationSignal mSignal;
 
         public StatsUploadTask(JobParameters jobParams) {
             this.mJobParams = jobParams;
         }
 
         public void execute() {
-            ExecutorService executor = Executors.newSingleThreadExecutor();
             Handler handler = new Handler(Looper.getMainLooper());
-            executor.execute(() -> {
+            mSignal = BackgroundExecutor.get().execute(TAG, signal -> {
                 PersistableBundle extras = mJobParams.getExtras();
 
                 String deviceId = extras.getString(KEY_UNIQUE_ID);
@@ -107,14 +106,14 @@ public class StatsUploadJobService extends JobService {
 
                 boolean success = false;
                 int jobType = extras.getInt(KEY_JOB_TYPE, -1);
-                if (!mCancelled) {
+                if (!signal.isCanceled()) {
                     switch (jobType) {
                         case JOB_TYPE_LINEAGEORG:
                             try {
                                 JSONObject json = buildStatsRequest(deviceId, deviceName,
                                         deviceVersion, deviceCountry, deviceCarrier,
                                         deviceCarrierId);
-                                success = uploadToLineage(json);
+                                success = uploadToLineage(json, signal);
                             } catch (IOException | JSONException e) {
                                 Log.e(TAG, "Could not upload stats checkin to community server", e);
                             }
@@ -125,7 +124,7 @@ public class StatsUploadJobService extends JobService {
                     Log.d(TAG, "job id " + mJobParams.getJobId() + ", has finished with success="
                             + success);
 
-                if (!mCancelled) {
+                if (!signal.isCanceled()) {
                     final boolean finalResult = success;
                     handler.post(() -> {
                         mCurrentJobs.remove(mJobParams);
@@ -136,7 +135,9 @@ public class StatsUploadJobService extends JobService {
         }
 
         public void cancel() {
-            mCancelled = true;
+            if (mSignal != null) {
+                mSignal.cancel();
+            }
         }
     }
 
@@ -153,10 +154,13 @@ public class StatsUploadJobService extends JobService {
         return request;
     }
 
-    private boolean uploadToLineage(JSONObject json) throws IOException {
+    private boolean uploadToLineage(JSONObject json, CancellationSignal signal)
+            throws IOException {
         final Uri uri = Uri.parse(getString(R.string.stats_lineage_url));
         URL url = new URL(uri.toString());
         HttpURLConnection urlConnection = (HttpURLConnection) url.openConnection();
+        // Abort the request as soon as the job is stopped
+        signal.setOnCancelListener(urlConnection::disconnect);
         try {
             urlConnection.setInstanceFollowRedirects(true);
             urlConnection.setDoOutput(true);
@@ -379,7 +379,7 @@ public class LiveDisplaySettings extends SettingsPreferenceFragment implements S
     }
 
     @Override
-    public void onSettingsChanged(Uri uri) {
+    protected void onSettingsChanged(Set<Uri> uris) {
         updateModeSummary();
         updateTemperatureSummary();
         updateReadingModeStatus();
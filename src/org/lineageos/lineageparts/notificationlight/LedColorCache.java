@@ -0,0 +1,140 @@
+/*
+ * SPDX-FileCopyrightText: 2026 The LineageOS Project
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package org.lineageos.lineageparts.notificationlight;
+
+import android.content.Context;
+import android.content.Intent;
+import android.content.SharedPreferences;
+import android.content.pm.ApplicationInfo;
+import android.content.pm.PackageInfo;
+import android.content.pm.PackageManager;
+import android.content.pm.ResolveInfo;
+import android.os.CancellationSignal;
+import android.os.Handler;
+import android.os.Looper;
+
+import org.lineageos.lineageparts.utils.BackgroundExecutor;
+
+import java.util.List;
+
+import lineageos.util.ColorUtils;
+
+/**
+ * Persistent cache of the LED colors generated from the app icons.
+ * <p>
+ * Colors are stored along with the lastUpdateTime of the package they were generated
+ * from, so an update of the package invalidates its color.
+ */
+class LedColorCache {
+
+    private static final String TAG = LedColorCache.class.getSimpleName();
+
+    private static final String PREFS_NAME = "notification_light_colors";
+
+    private static LedColorCache sInstance;
+
+    interface Callback {
+        /**
+         * Called on the main thread, with the default color if the package isn't installed.
+         */
+        void onColorLoaded(String packageName, int color);
+    }
+
+    private final PackageManager mPm;
+    private final SharedPreferences mPrefs;
+    private final Handler mHandler = new Handler(Looper.getMainLooper());
+
+    private LedColorCache(Context context) {
+        mPm = context.getPackageManager();
+        mPrefs = context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+    }
+
+    static synchronized LedColorCache get(Context context) {
+        if (sInstance == null) {
+            sInstance = new LedColorCache(context.getApplicationContext());
+        }
+        return sInstance;
+    }
+
+    /**
+     * Looks up the color generated from the icon of the package in the background,
+     * generating it if it isn't cached yet.
+     *
+     * @return the signal to cancel the lookup
+     */
+    CancellationSignal load(String packageName, int defaultColor, Callback callback) {
+        return BackgroundExecutor.get().execute(TAG, signal -> {
+            final SharedPreferences.Editor editor = mPrefs.edit();
+            final int color = getColor(packageName, defaultColor, editor);
+            editor.apply();
+            mHandler.post(() -> {
+                if (!signal.isCanceled()) {
+                    callback.onColorLoaded(packageName, color);
+                }
+            });
+        });
+    }
+
+    /* returns the color, or the default color if the package isn't installed. */
+    private int getColor(String packageName, int defaultColor,
+            SharedPreferences.Editor editor) {
+        try {
+            final PackageInfo pi = mPm.getPackageInfo(packageName,
+                    PackageManager.PackageInfoFlags.of(0));
+            return getColor(pi.applicationInfo, pi.lastUpdateTime, editor);
+        } catch (PackageManager.NameNotFoundException e) {
+            editor.remove(packageName);
+            return defaultColor;
+        }
+    }
+
+    private int getColor(ApplicationInfo appInfo, long lastUpdateTime,
+            SharedPreferences.Editor editor) {
+        final String cached = mPrefs.getString(appInfo.packageName, null);
+        if (cached != null) {
+            final String[] values = cached.split(":", -1);
+            try {
+                if (values.length == 2 && Long.parseLong(values[0]) == lastUpdateTime) {
+                    return Integer.parseInt(values[1]);
+                }
+            } catch (NumberFormatException e) {
+                // Regenerate it
+            }
+        }
+
+        final int color = ColorUtils.generateAlertColorFromDrawable(
+                mPm.getApplicationIcon(appInfo));
+        editor.putString(appInfo.packageName, lastUpdateTime + ":" + color);
+        return color;
+    }
+
+    /**
+     * Generates, in the background, the colors of the launchable apps which aren't cached
+     * yet, so that adding one of them doesn't have to wait for it.
+     *
+     * @return the signal to cancel the pass
+     */
+    CancellationSignal precomputeLauncherApps() {
+        return BackgroundExecutor.get().executeExclusive(TAG, signal -> {
+            final Intent mainIntent = new Intent(Intent.ACTION_MAIN, null);
+            mainIntent.addCategory(Intent.CATEGORY_LAUNCHER);
+            final List<ResolveInfo> infos = mPm.queryIntentActivities(mainIntent,
+                    PackageManager.ResolveInfoFlags.of(0));
+            // Written at once, rather than rewriting the prefs file for every app
+            final SharedPreferences.Editor editor = mPrefs.edit();
+            try {
+                for (ResolveInfo info : infos) {
+                    if (signal.isCanceled()) {
+                        return;
+                    }
+                    getColor(info.activityInfo.packageName, 0, editor);
+                }
+            } finally {
+                editor.apply();
+            }
+        });
+    }
+}
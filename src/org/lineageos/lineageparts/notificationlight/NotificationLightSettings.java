@@ -9,15 +9,12 @@ package org.lineageos.lineageparts.notificationlight;
 import android.app.Dialog;
 import android.content.ContentResolver;
 import android.content.Context;
-import android.content.pm.PackageInfo;
 import android.content.pm.PackageManager;
-import android.content.pm.PackageManager.NameNotFoundException;
 import android.content.res.Resources;
-import android.graphics.drawable.Drawable;
 import android.os.Bundle;
+import android.os.CancellationSignal;
 import android.provider.Settings;
 import android.telephony.TelephonyManager;
-import android.text.TextUtils;
 import android.util.ArraySet;
 import android.widget.ListView;
 
@@ -29,22 +26,20 @@ import androidx.preference.PreferenceScreen;
 import org.lineageos.internal.notification.LightsCapabilities;
 import org.lineageos.lineageparts.search.BaseSearchIndexProvider;
 import org.lineageos.lineageparts.search.Searchable;
+import org.lineageos.lineageparts.utils.AppCatalog;
+import org.lineageos.lineageparts.utils.AppInfoCache;
 import org.lineageos.lineageparts.widget.PackageListAdapter;
-import org.lineageos.lineageparts.widget.PackageListAdapter.PackageItem;
 import org.lineageos.lineageparts.R;
 import org.lineageos.lineageparts.SettingsPreferenceFragment;
 
 import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
-import java.util.Map;
 import java.util.Set;
 
 import lineageos.preference.LineageSystemSettingSwitchPreference;
 import lineageos.preference.SystemSettingMainSwitchPreference;
 import lineageos.providers.LineageSettings;
-import lineageos.util.ColorUtils;
 
 public class NotificationLightSettings extends SettingsPreferenceFragment implements
         ApplicationLightPreference.ItemLongClickListener, Preference.OnPreferenceChangeListener,
@@ -90,8 +85,12 @@ public class NotificationLightSettings extends SettingsPreferenceFragment implem
     private ApplicationLightPreference mCallPref;
     private ApplicationLightPreference mVoicemailPref;
     private PackageListAdapter mPackageAdapter;
-    private String mPackageList;
-    private Map<String, Package> mPackages;
+    private CancellationSignal mColorPrecomputeSignal;
+    private NotificationLightStore mStore;
+    // Added apps whose color is still generated, and not edited since
+    private final Set<String> mPendingAutoColors = new ArraySet<>();
+    // Whether the app preferences no longer match the store
+    private boolean mApplicationPrefsDirty = true;
     // Supports rgb color control
     private boolean mMultiColorLed;
     // Supports adjustable pulse
@@ -177,7 +176,7 @@ public class NotificationLightSettings extends SettingsPreferenceFragment implem
             mPackageManager = getActivity().getPackageManager();
             mPackageAdapter = new PackageListAdapter(getActivity());
 
-            mPackages = new HashMap<>();
+            mStore = new NotificationLightStore(context);
 
             Preference addPreference = prefSet.findPreference(ADD_APPS);
             addPreference.setOnPreferenceClickListener(preference -> {
@@ -192,11 +191,35 @@ public class NotificationLightSettings extends SettingsPreferenceFragment implem
         } else {
             mAutoGenerateColors.setOnPreferenceChangeListener(this);
             watch(LineageSettings.System.getUriFor(NOTIFICATION_LIGHT_COLOR_AUTO));
+
+            // Generate the colors of the apps which can be added while the list loads
+            if (isAutoColorEnabled()) {
+                precomputeColors();
+            }
         }
 
         watch(Settings.System.getUriFor(NOTIFICATION_LIGHT_PULSE));
     }
 
+    private void precomputeColors() {
+        if (mPackageAdapter == null) {
+            return;
+        }
+        if (mColorPrecomputeSignal != null) {
+            mColorPrecomputeSignal.cancel();
+        }
+        mColorPrecomputeSignal = LedColorCache.get(requireContext()).precomputeLauncherApps();
+    }
+
+    @Override
+    public void onDestroy() {
+        super.onDestroy();
+        if (mColorPrecomputeSignal != null) {
+            mColorPrecomputeSignal.cancel();
+            mColorPrecomputeSignal = null;
+        }
+    }
+
     @Override
     public void onResume() {
         super.onResume();
@@ -205,6 +228,15 @@ public class NotificationLightSettings extends SettingsPreferenceFragment implem
         requireActivity().invalidateOptionsMenu();
     }
 
+    @Override
+    public void onPause() {
+        super.onPause();
+        if (mStore != null) {
+            // Hand the app values edited on this screen to the framework at once
+            mStore.flush();
+        }
+    }
+
     private void refreshDefault() {
         ContentResolver resolver = requireActivity().getContentResolver();
         int color = LineageSettings.System.getInt(resolver,
@@ -248,45 +280,85 @@ public class NotificationLightSettings extends SettingsPreferenceFragment implem
     private void refreshCustomApplicationPrefs() {
         Context context = getActivity();
 
-        if (!parsePackageList()) {
+        if (mStore == null) {
+            return;
+        }
+        if (!mStore.sync() && !mApplicationPrefsDirty) {
             maybeDisplayApplicationHint(context);
             return;
         }
+        mApplicationPrefsDirty = false;
 
-        // Add the Application Preferences
+        // Update the Application Preferences, only touching the ones which changed
         if (mApplicationPrefList != null) {
             for (int i = 0; i < mApplicationPrefList.getPreferenceCount();) {
                 Preference pref = mApplicationPrefList.getPreference(i);
-                if (ADD_APPS.equals(pref.getKey())) {
+                if (ADD_APPS.equals(pref.getKey())
+                        || (pref.getKey() != null && mStore.get(pref.getKey()) != null)) {
                     i++;
                     continue;
                 }
 
+                // Removed app, or the hint shown while there were no apps
                 mApplicationPrefList.removePreference(pref);
             }
 
-            for (Package pkg : mPackages.values()) {
-                try {
-                    PackageInfo info = mPackageManager.getPackageInfo(pkg.name,
-                            PackageManager.PackageInfoFlags.of(PackageManager.GET_META_DATA));
-                    ApplicationLightPreference pref =
-                            new ApplicationLightPreference(context, null,
-                                    pkg.color, pkg.timeon, pkg.timeoff);
-
-                    pref.setKey(pkg.name);
-                    pref.setTitle(info.applicationInfo.loadLabel(mPackageManager));
-                    pref.setIcon(info.applicationInfo.loadIcon(mPackageManager));
-                    pref.setPersistent(false);
-                    pref.setOnPreferenceChangeListener(this);
-                    pref.setOnLongClickListener(this);
-                    mApplicationPrefList.addPreference(pref);
-                } catch (NameNotFoundException e) {
-                    // Do nothing
+            final AppInfoCache appInfoCache = AppInfoCache.get(context);
+            final List<String> addedPackages = new ArrayList<>();
+            for (NotificationLightStore.Entry entry : mStore.getEntries()) {
+                ApplicationLightPreference pref =
+                        mApplicationPrefList.findPreference(entry.mPackageName);
+                if (pref != null) {
+                    pref.setAllValues(entry.mColor, entry.mTimeOn, entry.mTimeOff);
+                    continue;
+                }
+
+                pref = new ApplicationLightPreference(context, null,
+                        entry.mColor, entry.mTimeOn, entry.mTimeOff);
+                pref.setKey(entry.mPackageName);
+                // Show what we have until the app info is loaded
+                AppInfoCache.AppInfo info = appInfoCache.getCached(entry.mPackageName);
+                if (info != null) {
+                    pref.setTitle(info.label);
+                    pref.setIcon(info.newIcon());
+                } else {
+                    pref.setTitle(entry.mPackageName);
+                    pref.setIcon(mPackageManager.getDefaultActivityIcon());
                 }
+                pref.setPersistent(false);
+                pref.setOnPreferenceChangeListener(this);
+                pref.setOnLongClickListener(this);
+                mApplicationPrefList.addPreference(pref);
+                addedPackages.add(entry.mPackageName);
+            }
+
+            if (!addedPackages.isEmpty()) {
+                appInfoCache.load(addedPackages, this::onAppInfoLoaded);
             }
 
             maybeDisplayApplicationHint(context);
-            mPackageAdapter.setExcludedPackages(new HashSet<>(mPackages.keySet()));
+            mPackageAdapter.setExcludedPackages(new HashSet<>(mStore.getPackageNames()));
+        }
+    }
+
+    private void onAppInfoLoaded(String packageName, AppInfoCache.AppInfo info) {
+        if (getActivity() == null || mApplicationPrefList == null) {
+            return;
+        }
+        Preference pref = mApplicationPrefList.findPreference(packageName);
+        if (pref == null) {
+            return;
+        }
+        if (info != null) {
+            pref.setTitle(info.label);
+            pref.setIcon(info.newIcon());
+        } else {
+            // Not installed anymore, so it mustn't come back with the next refresh
+            mPendingAutoColors.remove(packageName);
+            mStore.remove(packageName);
+            mApplicationPrefList.removePreference(pref);
+            maybeDisplayApplicationHint(getActivity());
+            mPackageAdapter.setExcludedPackages(new HashSet<>(mStore.getPackageNames()));
         }
     }
 
@@ -304,80 +376,45 @@ public class NotificationLightSettings extends SettingsPreferenceFragment implem
         }
     }
 
-    private int getInitialColorForPackage(String packageName) {
-        boolean autoColor = LineageSettings.System.getInt(getActivity().getContentResolver(),
+    private boolean isAutoColorEnabled() {
+        return LineageSettings.System.getInt(getActivity().getContentResolver(),
                 NOTIFICATION_LIGHT_COLOR_AUTO, mMultiColorLed ? 1 : 0) == 1;
-        int color = mDefaultColor;
-        if (autoColor) {
-            try {
-                Drawable icon = mPackageManager.getApplicationIcon(packageName);
-                color = ColorUtils.generateAlertColorFromDrawable(icon);
-            } catch (NameNotFoundException e) {
-                // shouldn't happen, but just return default
-            }
-        }
-        return color;
     }
 
     private void addCustomApplicationPref(String packageName) {
-        Package pkg = mPackages.get(packageName);
-        if (pkg == null) {
-            int color = getInitialColorForPackage(packageName);
-            pkg = new Package(packageName, color, mDefaultLedOn, mDefaultLedOff);
-            mPackages.put(packageName, pkg);
-            savePackageList(false);
-            refreshCustomApplicationPrefs();
-        }
-    }
-
-    private void removeCustomApplicationPref(String packageName) {
-        if (mPackages.remove(packageName) != null) {
-            savePackageList(false);
+        if (mStore.get(packageName) == null) {
+            // Start with the default color, the generated one replaces it once loaded
+            mStore.put(packageName, mDefaultColor, mDefaultLedOn, mDefaultLedOff);
+            if (isAutoColorEnabled()) {
+                // Usually precomputed while the app list was loading
+                mPendingAutoColors.add(packageName);
+                LedColorCache.get(getActivity()).load(packageName, mDefaultColor,
+                        this::onAutoColorLoaded);
+            }
+            mApplicationPrefsDirty = true;
             refreshCustomApplicationPrefs();
         }
     }
 
-    private boolean parsePackageList() {
-        final String baseString = LineageSettings.System.getString(
-                getActivity().getContentResolver(),
-                LineageSettings.System.NOTIFICATION_LIGHT_PULSE_CUSTOM_VALUES);
-
-        if (TextUtils.equals(mPackageList, baseString)) {
-            return false;
+    private void onAutoColorLoaded(String packageName, int color) {
+        if (!isAdded() || !mPendingAutoColors.remove(packageName)) {
+            return;
         }
-
-        mPackageList = baseString;
-        mPackages.clear();
-
-        if (baseString != null) {
-            final String[] array = TextUtils.split(baseString, "\\|");
-            for (String item : array) {
-                if (TextUtils.isEmpty(item)) {
-                    continue;
-                }
-                Package pkg = Package.fromString(item);
-                if (pkg != null) {
-                    mPackages.put(pkg.name, pkg);
-                }
-            }
+        final NotificationLightStore.Entry entry = mStore.get(packageName);
+        if (entry != null && entry.mColor != color) {
+            mStore.put(packageName, color, entry.mTimeOn, entry.mTimeOff);
+            mApplicationPrefsDirty = true;
+            refreshCustomApplicationPrefs();
         }
-
-        mPackageAdapter.setExcludedPackages(new HashSet<>(mPackages.keySet()));
-
-        return true;
     }
 
-    private void savePackageList(boolean preferencesUpdated) {
-        List<String> settings = new ArrayList<>();
-        for (Package app : mPackages.values()) {
-            settings.add(app.toString());
-        }
-        final String value = TextUtils.join("|", settings);
-        if (preferencesUpdated) {
-            mPackageList = value;
+    private void removeCustomApplicationPref(String packageName) {
+        mPendingAutoColors.remove(packageName);
+        if (mStore.get(packageName) != null) {
+            mStore.remove(packageName);
+            mApplicationPrefsDirty = true;
+            refreshCustomApplicationPrefs();
         }
-        LineageSettings.System.putString(getActivity().getContentResolver(),
-                LineageSettings.System.NOTIFICATION_LIGHT_PULSE_CUSTOM_VALUES, value);
     }
 
     /**
@@ -420,12 +457,9 @@ public class NotificationLightSettings extends SettingsPreferenceFragment implem
         }
 
         // Find the custom package and sets its new values
-        Package app = mPackages.get(packageName);
-        if (app != null) {
-            app.color = color;
-            app.timeon = timeOn;
-            app.timeoff = timeOff;
-            savePackageList(true);
+        mPendingAutoColors.remove(packageName);
+        if (mStore.get(packageName) != null) {
+            mStore.put(packageName, color, timeOn, timeOff);
         }
     }
 
@@ -466,6 +500,9 @@ public class NotificationLightSettings extends SettingsPreferenceFragment implem
                 preference == mScreenOnLightsPref ||
                 preference == mAutoGenerateColors) {
             getActivity().invalidateOptionsMenu();
+            if (preference == mAutoGenerateColors && (Boolean) objValue) {
+                precomputeColors();
+            }
         } else {
             ApplicationLightPreference lightPref = (ApplicationLightPreference) preference;
             updateValues(lightPref.getKey(), lightPref.getColor(),
@@ -498,7 +535,7 @@ public class NotificationLightSettings extends SettingsPreferenceFragment implem
 
                 list.setOnItemClickListener((parent, view, position, id1) -> {
                     // Add empty application definition, the user will be able to edit it later
-                    PackageItem info = (PackageItem) parent.getItemAtPosition(position);
+                    AppCatalog.App info = (AppCatalog.App) parent.getItemAtPosition(position);
                     addCustomApplicationPref(info.packageName);
                     dialog.cancel();
                 });
@@ -509,51 +546,6 @@ public class NotificationLightSettings extends SettingsPreferenceFragment implem
         return dialog;
     }
 
-    /**
-     * Application class
-     */
-    private static class Package {
-        public String name;
-        public Integer color;
-        public Integer timeon;
-        public Integer timeoff;
-
-        /**
-         * Stores all the application values in one call
-         */
-        public Package(String name, Integer color, Integer timeon, Integer timeoff) {
-            this.name = name;
-            this.color = color;
-            this.timeon = timeon;
-            this.timeoff = timeoff;
-        }
-
-        public String toString() {
-            return name + "=" + color + ";" + timeon + ";" + timeoff;
-        }
-
-        public static Package fromString(String value) {
-            if (TextUtils.isEmpty(value)) {
-                return null;
-            }
-            String[] app = value.split("=", -1);
-            if (app.length != 2)
-                return null;
-
-            String[] values = app[1].split(";", -1);
-            if (values.length != 3)
-                return null;
-
-            try {
-                return new Package(app[0], Integer.parseInt(values[0]), Integer
-                        .parseInt(values[1]), Integer.parseInt(values[2]));
-            } catch (NumberFormatException e) {
-                return null;
-            }
-        }
-
-    }
-
     public static final SummaryProvider SUMMARY_PROVIDER = (context, key) -> {
         if (Settings.System.getInt(context.getContentResolver(),
                 NOTIFICATION_LIGHT_PULSE, 1) == 1) {
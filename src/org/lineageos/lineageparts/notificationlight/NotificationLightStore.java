@@ -0,0 +1,205 @@
+/*
+ * SPDX-FileCopyrightText: 2026 The LineageOS Project
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package org.lineageos.lineageparts.notificationlight;
+
+import android.content.ContentResolver;
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.text.TextUtils;
+import android.util.ArrayMap;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+
+import lineageos.providers.LineageSettings;
+
+/**
+ * Keyed store of the per-app notification light values.
+ * <p>
+ * Every app is stored under its own key, so adding, editing or removing one app only
+ * writes that app. The framework still reads the values from the legacy
+ * NOTIFICATION_LIGHT_PULSE_CUSTOM_VALUES string, which is written from the cached
+ * serialized entries by {@link #flush()} once the edits are done. Only a hash of the
+ * written string is kept, to migrate the string back into the store whenever it is
+ * changed by someone else (e.g. a settings restore).
+ */
+class NotificationLightStore {
+
+    private static final String PREFS_NAME = "notification_light_apps";
+    private static final String KEY_VERSION = "version";
+    private static final String KEY_LEGACY_HASH = "legacy_hash";
+    // Whether the entries changed since the legacy string was last written
+    private static final String KEY_LEGACY_DIRTY = "legacy_dirty";
+    private static final String KEY_PACKAGE_PREFIX = "pkg:";
+
+    // Bump when the format of the entries changes, to migrate from the legacy string again
+    private static final int VERSION = 2;
+
+    static final class Entry {
+        final String mPackageName;
+        final int mColor;
+        final int mTimeOn;
+        final int mTimeOff;
+        // Serialized form, in the format of the legacy string
+        final String mValue;
+
+        Entry(String packageName, int color, int timeOn, int timeOff) {
+            mPackageName = packageName;
+            mColor = color;
+            mTimeOn = timeOn;
+            mTimeOff = timeOff;
+            mValue = packageName + "=" + color + ";" + timeOn + ";" + timeOff;
+        }
+
+        static Entry fromString(String value) {
+            if (TextUtils.isEmpty(value)) {
+                return null;
+            }
+            String[] app = value.split("=", -1);
+            if (app.length != 2)
+                return null;
+
+            String[] values = app[1].split(";", -1);
+            if (values.length != 3)
+                return null;
+
+            try {
+                return new Entry(app[0], Integer.parseInt(values[0]),
+                        Integer.parseInt(values[1]), Integer.parseInt(values[2]));
+            } catch (NumberFormatException e) {
+                return null;
+            }
+        }
+    }
+
+    private final ContentResolver mResolver;
+    private final SharedPreferences mPrefs;
+    private final Map<String, Entry> mEntries = new ArrayMap<>();
+    private boolean mLoaded;
+
+    NotificationLightStore(Context context) {
+        mResolver = context.getContentResolver();
+        mPrefs = context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+    }
+
+    /**
+     * Loads the store, migrating the legacy string if it wasn't written by the store.
+     *
+     * @return whether the entries changed since the last call
+     */
+    boolean sync() {
+        final String legacyValue = getLegacyValue();
+        if (mPrefs.getInt(KEY_VERSION, 0) == VERSION
+                && mPrefs.contains(KEY_LEGACY_HASH)
+                && getHash(legacyValue) == mPrefs.getInt(KEY_LEGACY_HASH, 0)) {
+            if (mLoaded) {
+                return false;
+            }
+            loadFromPrefs();
+        } else {
+            migrate(legacyValue);
+        }
+        mLoaded = true;
+        return true;
+    }
+
+    Entry get(String packageName) {
+        return mEntries.get(packageName);
+    }
+
+    Collection<Entry> getEntries() {
+        return Collections.unmodifiableCollection(mEntries.values());
+    }
+
+    Set<String> getPackageNames() {
+        return Collections.unmodifiableSet(mEntries.keySet());
+    }
+
+    void put(String packageName, int color, int timeOn, int timeOff) {
+        final Entry entry = new Entry(packageName, color, timeOn, timeOff);
+        mEntries.put(packageName, entry);
+        mPrefs.edit()
+                .putString(KEY_PACKAGE_PREFIX + packageName, entry.mValue)
+                .putBoolean(KEY_LEGACY_DIRTY, true)
+                .apply();
+    }
+
+    void remove(String packageName) {
+        if (mEntries.remove(packageName) != null) {
+            mPrefs.edit()
+                    .remove(KEY_PACKAGE_PREFIX + packageName)
+                    .putBoolean(KEY_LEGACY_DIRTY, true)
+                    .apply();
+        }
+    }
+
+    /**
+     * Writes the legacy string read by the framework, if the entries changed since it was
+     * last written.
+     */
+    void flush() {
+        if (!mLoaded || !mPrefs.getBoolean(KEY_LEGACY_DIRTY, false)) {
+            return;
+        }
+        // The entries are already serialized, so this only concatenates them
+        final StringBuilder sb = new StringBuilder();
+        for (Entry entry : mEntries.values()) {
+            if (sb.length() > 0) {
+                sb.append('|');
+            }
+            sb.append(entry.mValue);
+        }
+        final String value = sb.toString();
+        LineageSettings.System.putString(mResolver,
+                LineageSettings.System.NOTIFICATION_LIGHT_PULSE_CUSTOM_VALUES, value);
+        mPrefs.edit()
+                .putInt(KEY_LEGACY_HASH, getHash(value))
+                .putBoolean(KEY_LEGACY_DIRTY, false)
+                .apply();
+    }
+
+    private void loadFromPrefs() {
+        mEntries.clear();
+        for (Map.Entry<String, ?> pref : mPrefs.getAll().entrySet()) {
+            if (!pref.getKey().startsWith(KEY_PACKAGE_PREFIX)) {
+                continue;
+            }
+            final Entry entry = Entry.fromString((String) pref.getValue());
+            if (entry != null) {
+                mEntries.put(entry.mPackageName, entry);
+            }
+        }
+    }
+
+    private void migrate(String legacyValue) {
+        mEntries.clear();
+        final SharedPreferences.Editor editor = mPrefs.edit().clear();
+        if (legacyValue != null) {
+            for (String item : TextUtils.split(legacyValue, "\\|")) {
+                final Entry entry = Entry.fromString(item);
+                if (entry != null) {
+                    mEntries.put(entry.mPackageName, entry);
+                    editor.putString(KEY_PACKAGE_PREFIX + entry.mPackageName, entry.mValue);
+                }
+            }
+        }
+        editor.putInt(KEY_VERSION, VERSION)
+                .putInt(KEY_LEGACY_HASH, getHash(legacyValue))
+                .apply();
+    }
+
+    private String getLegacyValue() {
+        return LineageSettings.System.getString(mResolver,
+                LineageSettings.System.NOTIFICATION_LIGHT_PULSE_CUSTOM_VALUES);
+    }
+
+    private static int getHash(String legacyValue) {
+        // No apps may be stored either as an empty string or as no value at all
+        return TextUtils.isEmpty(legacyValue) ? 0 : legacyValue.hashCode();
+    }
+}
@@ -19,11 +19,13 @@ import org.lineageos.lineageparts.PartsActivity;
 import org.lineageos.lineageparts.R;
 import org.lineageos.lineageparts.SettingsPreferenceFragment;
 
+import lineageos.app.Profile;
+
 public class ProfilesPreference extends CheckBoxPreference implements View.OnClickListener {
     private static final String TAG = ProfilesPreference.class.getSimpleName();
     private static final float DISABLED_ALPHA = 0.4f;
     private final SettingsPreferenceFragment mFragment;
-    private final Bundle mSettingsBundle;
+    private Profile mProfile;
 
     // constant value that can be used to check return code from sub activity.
     private static final int PROFILE_DETAILS = 1;
@@ -33,12 +35,18 @@ public class ProfilesPreference extends CheckBoxPreference implements View.OnCli
     private TextView mSummaryText;
     private View mProfilesPref;
 
-    public ProfilesPreference(SettingsPreferenceFragment fragment, Bundle settingsBundle) {
+    public ProfilesPreference(SettingsPreferenceFragment fragment, Profile profile) {
         super(fragment.getActivity(), null, R.style.ProfilesPreferenceStyle);
         setLayoutResource(R.layout.preference_profiles);
         setWidgetLayoutResource(R.layout.preference_profiles_widget);
         mFragment = fragment;
-        mSettingsBundle = settingsBundle;
+        setProfile(profile);
+    }
+
+    public void setProfile(Profile profile) {
+        mProfile = profile;
+        setKey(profile.getUuid().toString());
+        setTitle(profile.getName());
     }
 
     @Override
@@ -51,7 +59,7 @@ public class ProfilesPreference extends CheckBoxPreference implements View.OnCli
         mTitleText = (TextView)holder.findViewById(android.R.id.title);
         mSummaryText = (TextView)holder.findViewById(android.R.id.summary);
 
-        if (mSettingsBundle != null) {
+        if (mProfile != null) {
             mProfilesSettingsButton.setOnClickListener(this);
             updatePreferenceViews();
         } else {
@@ -122,8 +130,13 @@ public class ProfilesPreference extends CheckBoxPreference implements View.OnCli
 
     // utility method used to start sub activity
     private void startProfileConfigActivity() {
+        // Only bundled when opened, rather than for every row of the list
+        Bundle args = new Bundle();
+        args.putParcelable(ProfilesSettings.EXTRA_PROFILE, mProfile);
+        args.putBoolean(ProfilesSettings.EXTRA_NEW_PROFILE, false);
+
         PartsActivity pa = (PartsActivity) mFragment.requireActivity();
-        pa.startPreferencePanel(SetupActionsFragment.class.getCanonicalName(), mSettingsBundle,
+        pa.startPreferencePanel(SetupActionsFragment.class.getCanonicalName(), args,
                 R.string.profile_profile_manage, null, null, PROFILE_DETAILS);
     }
 }
@@ -13,6 +13,8 @@ import android.content.Intent;
 import android.content.IntentFilter;
 import android.os.Bundle;
 import android.text.TextUtils;
+import android.util.ArrayMap;
+import android.util.ArraySet;
 import android.view.LayoutInflater;
 import android.view.Menu;
 import android.view.MenuInflater;
@@ -35,6 +37,7 @@ import org.lineageos.lineageparts.PartsActivity;
 import org.lineageos.lineageparts.R;
 import org.lineageos.lineageparts.SettingsPreferenceFragment;
 
+import java.util.Collections;
 import java.util.UUID;
 
 import lineageos.app.Profile;
@@ -55,6 +58,7 @@ public class ProfilesSettings extends SettingsPreferenceFragment
 
     private MainSwitchBar mProfileEnabler;
     private ProfileManager mProfileManager;
+    private Preference mAddProfilePreference;
 
     private boolean mEnabled;
 
@@ -197,49 +201,72 @@ public class ProfilesSettings extends SettingsPreferenceFragment
             refreshList();
         }
 
-        onSettingsChanged(null);
+        onSettingsChanged(Collections.emptySet());
     }
 
     public void refreshList() {
         PreferenceScreen plist = getPreferenceScreen();
-        plist.removeAll();
 
-        // Get active profile, if null
+        // Fetch the profiles once, and only update the rows which changed
+        Profile[] profiles = mProfileManager.getProfiles();
         Profile prof = mProfileManager.getActiveProfile();
         String selectedKey = prof != null ? prof.getUuid().toString() : null;
 
-        for (Profile profile : mProfileManager.getProfiles()) {
-            Bundle args = new Bundle();
-            args.putParcelable(ProfilesSettings.EXTRA_PROFILE, profile);
-            args.putBoolean(ProfilesSettings.EXTRA_NEW_PROFILE, false);
-
-            ProfilesPreference ppref = new ProfilesPreference(this, args);
-            ppref.setKey(profile.getUuid().toString());
-            ppref.setTitle(profile.getName());
-            ppref.setPersistent(false);
-            ppref.setOnPreferenceChangeListener(this);
-            ppref.setSelectable(true);
-            ppref.setEnabled(true);
-
-            if (TextUtils.equals(selectedKey, ppref.getKey())) {
-                ppref.setChecked(true);
+        ArraySet<String> keys = new ArraySet<>(profiles.length);
+        for (Profile profile : profiles) {
+            keys.add(profile.getUuid().toString());
+        }
+
+        ArrayMap<String, ProfilesPreference> existing = new ArrayMap<>();
+        for (int i = plist.getPreferenceCount() - 1; i >= 0; i--) {
+            Preference pref = plist.getPreference(i);
+            if (!(pref instanceof ProfilesPreference)) {
+                continue;
+            }
+            if (keys.contains(pref.getKey())) {
+                existing.put(pref.getKey(), (ProfilesPreference) pref);
+            } else {
+                plist.removePreference(pref);
             }
+        }
 
-            plist.addPreference(ppref);
+        for (int i = 0; i < profiles.length; i++) {
+            Profile profile = profiles[i];
+            String key = profile.getUuid().toString();
+
+            ProfilesPreference ppref = existing.get(key);
+            if (ppref != null) {
+                ppref.setProfile(profile);
+            } else {
+                ppref = new ProfilesPreference(this, profile);
+                ppref.setPersistent(false);
+                ppref.setOnPreferenceChangeListener(this);
+                ppref.setSelectable(true);
+                ppref.setEnabled(true);
+            }
+            ppref.setOrder(i);
+            ppref.setChecked(TextUtils.equals(selectedKey, key));
+            if (ppref.getParent() == null) {
+                plist.addPreference(ppref);
+            }
         }
 
         // Add pref to create new profile
-        Preference preference = new Preference(requireContext());
-        preference.setIcon(R.drawable.ic_add_24dp);
-        preference.setTitle(R.string.profiles_create_new);
-        preference.setSelectable(true);
-        preference.setEnabled(true);
-        preference.setOnPreferenceClickListener((pref) -> {
-            addProfile();
-            return true;
-        });
-
-        plist.addPreference(preference);
+        if (mAddProfilePreference == null) {
+            mAddProfilePreference = new Preference(requireContext());
+            mAddProfilePreference.setIcon(R.drawable.ic_add_24dp);
+            mAddProfilePreference.setTitle(R.string.profiles_create_new);
+            mAddProfilePreference.setSelectable(true);
+            mAddProfilePreference.setEnabled(true);
+            mAddProfilePreference.setOnPreferenceClickListener((pref) -> {
+                addProfile();
+                return true;
+            });
+        }
+        mAddProfilePreference.setOrder(profiles.length);
+        if (mAddProfilePreference.getParent() == null) {
+            plist.addPreference(mAddProfilePreference);
+        }
     }
 
     public boolean onPreferenceChange(Preference preference, Object newValue) {
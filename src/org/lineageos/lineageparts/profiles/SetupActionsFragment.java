@@ -9,19 +9,13 @@ package org.lineageos.lineageparts.profiles;
 import android.app.Activity;
 import android.app.Dialog;
 import android.app.admin.DevicePolicyManager;
-import android.bluetooth.BluetoothManager;
-import android.content.ContentResolver;
 import android.content.Context;
 import android.content.DialogInterface;
 import android.content.Intent;
-import android.location.LocationManager;
 import android.media.AudioManager;
-import android.net.wifi.WifiManager;
-import android.nfc.NfcManager;
 import android.os.Bundle;
 import android.os.Handler;
 import android.os.Looper;
-import android.provider.Settings;
 
 import androidx.annotation.NonNull;
 import androidx.recyclerview.widget.LinearLayoutManager;
@@ -40,6 +34,7 @@ import android.widget.CheckBox;
 import android.widget.EditText;
 import android.widget.SeekBar;
 import android.widget.TextView;
+import android.widget.Toast;
 
 import androidx.appcompat.app.AlertDialog;
 
@@ -69,12 +64,12 @@ import org.lineageos.lineageparts.profiles.actions.item.ProfileNameItem;
 import org.lineageos.lineageparts.profiles.actions.item.RingModeItem;
 import org.lineageos.lineageparts.profiles.actions.item.TriggerItem;
 import org.lineageos.lineageparts.profiles.actions.item.VolumeStreamItem;
+import org.lineageos.lineageparts.utils.BackgroundExecutor;
+import org.lineageos.lineageparts.utils.DeviceStateSnapshot;
 import org.lineageos.lineageparts.utils.DeviceUtils;
 
 import java.util.ArrayList;
 import java.util.List;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
 
 import static lineageos.profiles.ConnectionSettings.PROFILE_CONNECTION_BLUETOOTH;
 import static lineageos.profiles.ConnectionSettings.PROFILE_CONNECTION_LOCATION;
@@ -87,6 +82,8 @@ import static lineageos.profiles.ConnectionSettings.PROFILE_CONNECTION_WIFIAP;
 public class SetupActionsFragment extends SettingsPreferenceFragment
         implements ItemListAdapter.OnItemClickListener {
 
+    private static final String TAG = "SetupActionsFragment";
+
     private static final int NEW_TRIGGER_REQUEST_CODE = 1001;
 
     private static final int MENU_REMOVE = Menu.FIRST;
@@ -132,6 +129,14 @@ public class SetupActionsFragment extends SettingsPreferenceFragment
     };
     private final List<Item> mItems = new ArrayList<>();
 
+    // Which items this device has, checked once rather than on every rebuild of the list
+    private boolean mSupportsBluetooth;
+    private boolean mSupportsNfc;
+    private boolean mSupportsMobileData;
+    private boolean mDozeAvailable;
+    private boolean mHasNotificationLed;
+    private boolean mRequireSecureKeyguard;
+
     public static SetupActionsFragment newInstance(Profile profile, boolean newProfile) {
         SetupActionsFragment fragment = new SetupActionsFragment();
         Bundle args = new Bundle();
@@ -155,6 +160,7 @@ public class SetupActionsFragment extends SettingsPreferenceFragment
         }
 
         mProfileManager = ProfileManager.getInstance(getActivity());
+        loadDeviceFeatures();
         mAdapter = new ItemListAdapter(getActivity(), mItems, this);
         rebuildItemList();
 
@@ -170,9 +176,20 @@ public class SetupActionsFragment extends SettingsPreferenceFragment
         }
     }
 
+    private void loadDeviceFeatures() {
+        final Context context = requireContext();
+        mSupportsBluetooth = DeviceUtils.deviceSupportsBluetooth(context);
+        mSupportsNfc = DeviceUtils.deviceSupportsNfc(context);
+        mSupportsMobileData = DeviceUtils.deviceSupportsMobileData(context);
+        mDozeAvailable = DeviceUtils.isDozeAvailable(context);
+        mHasNotificationLed = getResources().getBoolean(
+                com.android.internal.R.bool.config_intrusiveNotificationLed);
+        mRequireSecureKeyguard = context.getSystemService(DevicePolicyManager.class)
+                .requireSecureKeyguard();
+    }
+
     private void rebuildItemList() {
-        final Context context = getActivity();
-        if (context == null) {
+        if (getActivity() == null) {
             return;
         }
 
@@ -186,28 +203,28 @@ public class SetupActionsFragment extends SettingsPreferenceFragment
             // triggers
             mItems.add(new Header(R.string.profile_triggers_header));
             mItems.add(generateTriggerItem(TriggerItem.WIFI));
-            if (DeviceUtils.deviceSupportsBluetooth(context)) {
+            if (mSupportsBluetooth) {
                 mItems.add(generateTriggerItem(TriggerItem.BLUETOOTH));
             }
-            if (DeviceUtils.deviceSupportsNfc(context)) {
+            if (mSupportsNfc) {
                 mItems.add(generateTriggerItem(TriggerItem.NFC));
             }
         }
 
         // connection overrides
         mItems.add(new Header(R.string.wireless_networks_settings_title));
-        if (DeviceUtils.deviceSupportsBluetooth(context)) {
+        if (mSupportsBluetooth) {
             mItems.add(new ConnectionOverrideItem(PROFILE_CONNECTION_BLUETOOTH,
                     mProfile.getSettingsForConnection(PROFILE_CONNECTION_BLUETOOTH)));
         }
         mItems.add(generateConnectionOverrideItem(PROFILE_CONNECTION_LOCATION));
         mItems.add(generateConnectionOverrideItem(PROFILE_CONNECTION_WIFI));
         mItems.add(generateConnectionOverrideItem(PROFILE_CONNECTION_SYNC));
-        if (DeviceUtils.deviceSupportsMobileData(getActivity())) {
+        if (mSupportsMobileData) {
             mItems.add(generateConnectionOverrideItem(PROFILE_CONNECTION_MOBILEDATA));
             mItems.add(generateConnectionOverrideItem(PROFILE_CONNECTION_WIFIAP));
         }
-        if (DeviceUtils.deviceSupportsNfc(getActivity())) {
+        if (mSupportsNfc) {
             mItems.add(generateConnectionOverrideItem(PROFILE_CONNECTION_NFC));
         }
 
@@ -222,8 +239,7 @@ public class SetupActionsFragment extends SettingsPreferenceFragment
         mItems.add(new Header(R.string.profile_system_settings_title));
         mItems.add(new RingModeItem(mProfile.getRingMode()));
         mItems.add(new AirplaneModeItem(mProfile.getAirplaneMode()));
-        DevicePolicyManager dpm = context.getSystemService(DevicePolicyManager.class);
-        if (!dpm.requireSecureKeyguard()) {
+        if (!mRequireSecureKeyguard) {
             mItems.add(new LockModeItem(mProfile));
         } else {
             mItems.add(new DisabledItem(R.string.profile_lockmode_title,
@@ -231,16 +247,16 @@ public class SetupActionsFragment extends SettingsPreferenceFragment
         }
         mItems.add(new BrightnessItem(mProfile.getBrightness()));
 
-        if (DeviceUtils.isDozeAvailable(context)) {
+        if (mDozeAvailable) {
             mItems.add(new DozeModeItem(mProfile));
         }
 
-        if (getResources().getBoolean(
-                com.android.internal.R.bool.config_intrusiveNotificationLed)) {
+        if (mHasNotificationLed) {
             mItems.add(new NotificationLightModeItem(mProfile));
         }
 
-        mAdapter.notifyDataSetChanged();
+        // Only the rows whose content changed are bound again
+        mAdapter.refresh();
     }
 
     @Override
@@ -346,107 +362,113 @@ public class SetupActionsFragment extends SettingsPreferenceFragment
     }
 
     private void fillProfileFromCurrentSettings() {
-        ExecutorService executor = Executors.newSingleThreadExecutor();
+        final Context context = requireContext();
         Handler handler = new Handler(Looper.getMainLooper());
-        executor.execute(() -> {
-            fillProfileWithCurrentSettings(getActivity(), mProfile);
+        BackgroundExecutor.get().execute(TAG, signal -> {
+            final boolean complete = fillProfileWithCurrentSettings(context, mProfile);
             updateProfile();
-            handler.post(this::rebuildItemList);
+            handler.post(() -> {
+                if (!isAdded()) {
+                    return;
+                }
+                rebuildItemList();
+                if (!complete) {
+                    Toast.makeText(context, R.string.profile_populate_profile_incomplete,
+                            Toast.LENGTH_LONG).show();
+                }
+            });
         });
     }
 
-    public static void fillProfileWithCurrentSettings(Context context, Profile profile) {
-        // bt
-        if (DeviceUtils.deviceSupportsBluetooth(context)) {
-            BluetoothManager bluetoothManager =
-                    (BluetoothManager) context.getSystemService(Context.BLUETOOTH_SERVICE);
-            profile.setConnectionSettings(
-                    new ConnectionSettings(ConnectionSettings.PROFILE_CONNECTION_BLUETOOTH,
-                            bluetoothManager.getAdapter().isEnabled() ? 1 : 0,
-                            true));
+    /**
+     * @return whether every setting was read, the ones which weren't are left as they are
+     */
+    public static boolean fillProfileWithCurrentSettings(Context context, Profile profile) {
+        // All sources are read at once, the ones which are unsupported or too slow are null
+        DeviceStateSnapshot state = DeviceStateSnapshot.capture(context);
+        if (!state.isComplete()) {
+            // Give the slow sources another chance before leaving them out
+            state = DeviceStateSnapshot.capture(context);
         }
 
+        // bt
+        setConnectionSettings(profile, ConnectionSettings.PROFILE_CONNECTION_BLUETOOTH,
+                state.isBluetoothEnabled());
+
         // location
-        LocationManager locationManager = context.getSystemService(LocationManager.class);
-        profile.setConnectionSettings(
-                new ConnectionSettings(ConnectionSettings.PROFILE_CONNECTION_LOCATION,
-                        locationManager.isLocationEnabled() ? 1 : 0, true));
+        setConnectionSettings(profile, ConnectionSettings.PROFILE_CONNECTION_LOCATION,
+                state.isLocationEnabled());
 
         // wifi
-        WifiManager wifiManager = context.getSystemService(WifiManager.class);
-        profile.setConnectionSettings(
-                new ConnectionSettings(ConnectionSettings.PROFILE_CONNECTION_WIFI,
-                        wifiManager.isWifiEnabled() ? 1 : 0, true));
+        setConnectionSettings(profile, ConnectionSettings.PROFILE_CONNECTION_WIFI,
+                state.isWifiEnabled());
 
         // auto sync data
-        profile.setConnectionSettings(
-                new ConnectionSettings(ConnectionSettings.PROFILE_CONNECTION_SYNC,
-                        ContentResolver.getMasterSyncAutomatically() ? 1 : 0, true));
+        setConnectionSettings(profile, ConnectionSettings.PROFILE_CONNECTION_SYNC,
+                state.isSyncEnabled());
 
         // mobile data
-        if (DeviceUtils.deviceSupportsMobileData(context)) {
-            profile.setConnectionSettings(
-                    new ConnectionSettings(ConnectionSettings.PROFILE_CONNECTION_MOBILEDATA,
-                            DeviceUtils.isMobileDataEnabled(context) ? 1 : 0, true));
-        }
+        setConnectionSettings(profile, ConnectionSettings.PROFILE_CONNECTION_MOBILEDATA,
+                state.isMobileDataEnabled());
 
         // wifi hotspot
-        profile.setConnectionSettings(
-                new ConnectionSettings(ConnectionSettings.PROFILE_CONNECTION_WIFIAP,
-                        wifiManager.isWifiApEnabled() ? 1 : 0, true));
+        setConnectionSettings(profile, ConnectionSettings.PROFILE_CONNECTION_WIFIAP,
+                state.isWifiApEnabled());
 
         // 2g/3g/4g
         // skipping this one
 
         // nfc
-        if (DeviceUtils.deviceSupportsNfc(context)) {
-            NfcManager nfcManager = context.getSystemService(NfcManager.class);
-            profile.setConnectionSettings(
-                    new ConnectionSettings(ConnectionSettings.PROFILE_CONNECTION_NFC,
-                            nfcManager.getDefaultAdapter().isEnabled() ? 1 : 0, true));
+        setConnectionSettings(profile, ConnectionSettings.PROFILE_CONNECTION_NFC,
+                state.isNfcEnabled());
+
+        // alarm, media, ringtone and notification volumes
+        for (int stream : new int[] { AudioManager.STREAM_ALARM, AudioManager.STREAM_MUSIC,
+                AudioManager.STREAM_RING, AudioManager.STREAM_NOTIFICATION }) {
+            final Integer volume = state.getStreamVolume(stream);
+            if (volume != null) {
+                profile.setStreamSettings(new StreamSettings(stream, volume, true));
+            }
         }
 
-        // alarm volume
-        final AudioManager am = context.getSystemService(AudioManager.class);
-        profile.setStreamSettings(new StreamSettings(AudioManager.STREAM_ALARM,
-                am.getStreamVolume(AudioManager.STREAM_ALARM), true));
-
-        // media volume
-        profile.setStreamSettings(new StreamSettings(AudioManager.STREAM_MUSIC,
-                am.getStreamVolume(AudioManager.STREAM_MUSIC), true));
-
-        // ringtone volume
-        profile.setStreamSettings(new StreamSettings(AudioManager.STREAM_RING,
-                am.getStreamVolume(AudioManager.STREAM_RING), true));
-
-        // notification volume
-        profile.setStreamSettings(new StreamSettings(AudioManager.STREAM_NOTIFICATION,
-                am.getStreamVolume(AudioManager.STREAM_NOTIFICATION), true));
-
         // ring mode
-        String ringValue;
-        switch (am.getRingerMode()) {
-            default:
-            case AudioManager.RINGER_MODE_NORMAL:
-                ringValue = "normal";
-                break;
-            case AudioManager.RINGER_MODE_SILENT:
-                ringValue = "mute";
-                break;
-            case AudioManager.RINGER_MODE_VIBRATE:
-                ringValue = "vibrate";
-                break;
+        final Integer ringerMode = state.getRingerMode();
+        if (ringerMode != null) {
+            String ringValue;
+            switch (ringerMode) {
+                default:
+                case AudioManager.RINGER_MODE_NORMAL:
+                    ringValue = "normal";
+                    break;
+                case AudioManager.RINGER_MODE_SILENT:
+                    ringValue = "mute";
+                    break;
+                case AudioManager.RINGER_MODE_VIBRATE:
+                    ringValue = "vibrate";
+                    break;
+            }
+            profile.setRingMode(new RingModeSettings(ringValue, true));
         }
-        profile.setRingMode(new RingModeSettings(ringValue, true));
 
         // airplane mode
-        boolean airplaneMode = Settings.Global.getInt(context.getContentResolver(),
-                Settings.Global.AIRPLANE_MODE_ON, 0) != 0;
-        profile.setAirplaneMode(new AirplaneModeSettings(airplaneMode ? 1 : 0, true));
+        final Boolean airplaneMode = state.isAirplaneModeEnabled();
+        if (airplaneMode != null) {
+            profile.setAirplaneMode(new AirplaneModeSettings(airplaneMode ? 1 : 0, true));
+        }
 
         // lock screen mode
         // populated only from profiles, so we can read the current profile,
         // but let's skip this one
+
+        return state.isComplete();
+    }
+
+    private static void setConnectionSettings(Profile profile, int connectionId,
+            Boolean enabled) {
+        if (enabled != null) {
+            profile.setConnectionSettings(
+                    new ConnectionSettings(connectionId, enabled ? 1 : 0, true));
+        }
     }
 
     @Override
@@ -539,7 +561,7 @@ public class SetupActionsFragment extends SettingsPreferenceFragment
                 (DialogInterface.OnClickListener) (dialog, item) -> {
             mProfile.setScreenLockMode(new LockSettings(LOCKMODE_MAPPING[item]));
             updateProfile();
-            mAdapter.notifyDataSetChanged();
+            mAdapter.refresh();
             dialog.dismiss();
         });
 
@@ -565,7 +587,7 @@ public class SetupActionsFragment extends SettingsPreferenceFragment
                 (DialogInterface.OnClickListener) (dialog, item) -> {
             mProfile.setDozeMode(DOZE_MAPPING[item]);
             updateProfile();
-            mAdapter.notifyDataSetChanged();
+            mAdapter.refresh();
             dialog.dismiss();
         });
 
@@ -591,7 +613,7 @@ public class SetupActionsFragment extends SettingsPreferenceFragment
                 (DialogInterface.OnClickListener) (dialog, item) -> {
             mProfile.setNotificationLightMode(NOTIFICATION_LIGHT_MAPPING[item]);
             updateProfile();
-            mAdapter.notifyDataSetChanged();
+            mAdapter.refresh();
             dialog.dismiss();
         });
 
@@ -630,7 +652,7 @@ public class SetupActionsFragment extends SettingsPreferenceFragment
                     break;
             }
             mProfile.setAirplaneMode(setting);
-            mAdapter.notifyDataSetChanged();
+            mAdapter.refresh();
             updateProfile();
             dialog.dismiss();
         });
@@ -687,7 +709,7 @@ public class SetupActionsFragment extends SettingsPreferenceFragment
                     break;
             }
             mProfile.setRingMode(setting);
-            mAdapter.notifyDataSetChanged();
+            mAdapter.refresh();
             updateProfile();
             dialog.dismiss();
         });
@@ -730,7 +752,7 @@ public class SetupActionsFragment extends SettingsPreferenceFragment
                     break;
             }
             mProfile.setConnectionSettings(setting);
-            mAdapter.notifyDataSetChanged();
+            mAdapter.refresh();
             updateProfile();
             dialog.dismiss();
         });
@@ -764,7 +786,7 @@ public class SetupActionsFragment extends SettingsPreferenceFragment
             streamSettings.setOverride(override.isChecked());
             streamSettings.setValue(value);
             mProfile.setStreamSettings(streamSettings);
-            mAdapter.notifyDataSetChanged();
+            mAdapter.refresh();
             updateProfile();
         });
         builder.setNegativeButton(android.R.string.cancel, null);
@@ -796,7 +818,7 @@ public class SetupActionsFragment extends SettingsPreferenceFragment
             brightnessSettings.setValue(value);
             brightnessSettings.setOverride(override.isChecked());
             mProfile.setBrightness(brightnessSettings);
-            mAdapter.notifyDataSetChanged();
+            mAdapter.refresh();
             updateProfile();
             dialog.dismiss();
         });
@@ -820,7 +842,7 @@ public class SetupActionsFragment extends SettingsPreferenceFragment
                         (DialogInterface.OnClickListener) (dialog, which) -> {
                     String value = entry.getText().toString();
                     mProfile.setName(value);
-                    mAdapter.notifyDataSetChanged();
+                    mAdapter.refresh();
                     updateProfile();
                 })
                 .setNegativeButton(android.R.string.cancel, null)
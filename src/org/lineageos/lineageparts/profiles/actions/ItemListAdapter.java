@@ -8,6 +8,8 @@ package org.lineageos.lineageparts.profiles.actions;
 import android.content.Context;
 
 import androidx.annotation.NonNull;
+import androidx.recyclerview.widget.AsyncListDiffer;
+import androidx.recyclerview.widget.DiffUtil;
 import androidx.recyclerview.widget.RecyclerView;
 import android.view.LayoutInflater;
 import android.view.View;
@@ -17,13 +19,22 @@ import android.widget.TextView;
 import org.lineageos.lineageparts.R;
 import org.lineageos.lineageparts.profiles.actions.item.Item;
 
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Objects;
 
+/**
+ * Adapter of the profile action items. The items are rendered into rows by {@link #refresh()},
+ * and the rows are diffed in the background, so that only the rows whose content changed
+ * are bound again.
+ */
 public class ItemListAdapter extends RecyclerView.Adapter<RecyclerView.ViewHolder>
         implements View.OnClickListener {
+    private final Context mContext;
     private final LayoutInflater mInflater;
     private final List<Item> mItems;
     private final OnItemClickListener mItemClickListener;
+    private final AsyncListDiffer<Row> mDiffer;
 
     public interface OnItemClickListener {
         void onItemClick(Item item, int position);
@@ -32,21 +43,73 @@ public class ItemListAdapter extends RecyclerView.Adapter<RecyclerView.ViewHolde
     private static final int VIEW_TYPE_HEADER = 0;
     private static final int VIEW_TYPE_ITEM = 1;
 
+    // Rendered content of an item, as the items themselves are views of mutable settings
+    private static final class Row {
+        final Item mItem;
+        final long mId;
+        final String mTitle;
+        final String mSummary;
+        final boolean mEnabled;
+
+        Row(Context context, Item item) {
+            mItem = item;
+            mId = item.getId();
+            mTitle = item.getTitle(context);
+            mSummary = item.getSummary(context);
+            mEnabled = item.isEnabled(context);
+        }
+    }
+
+    private static final DiffUtil.ItemCallback<Row> DIFF_CALLBACK =
+            new DiffUtil.ItemCallback<>() {
+        @Override
+        public boolean areItemsTheSame(@NonNull Row oldRow, @NonNull Row newRow) {
+            return oldRow.mId == newRow.mId;
+        }
+
+        @Override
+        public boolean areContentsTheSame(@NonNull Row oldRow, @NonNull Row newRow) {
+            return Objects.equals(oldRow.mTitle, newRow.mTitle)
+                    && Objects.equals(oldRow.mSummary, newRow.mSummary)
+                    && oldRow.mEnabled == newRow.mEnabled;
+        }
+    };
+
     public ItemListAdapter(Context context, List<Item> items, OnItemClickListener clickListener) {
         super();
+        mContext = context;
         mInflater = LayoutInflater.from(context);
         mItems = items;
         mItemClickListener = clickListener;
+        mDiffer = new AsyncListDiffer<>(this, DIFF_CALLBACK);
+        setHasStableIds(true);
+    }
+
+    /**
+     * Renders the items again, and rebinds the rows whose content changed.
+     */
+    public void refresh() {
+        final List<Row> rows = new ArrayList<>(mItems.size());
+        for (Item item : mItems) {
+            rows.add(new Row(mContext, item));
+        }
+        mDiffer.submitList(rows);
     }
 
     @Override
     public int getItemCount() {
-        return mItems.size();
+        return mDiffer.getCurrentList().size();
+    }
+
+    @Override
+    public long getItemId(int position) {
+        return mDiffer.getCurrentList().get(position).mId;
     }
 
     @Override
     public int getItemViewType(int position) {
-        return mItems.get(position).isHeader() ? VIEW_TYPE_HEADER : VIEW_TYPE_ITEM;
+        return mDiffer.getCurrentList().get(position).mItem.isHeader()
+                ? VIEW_TYPE_HEADER : VIEW_TYPE_ITEM;
     }
 
     @NonNull
@@ -67,11 +130,11 @@ public class ItemListAdapter extends RecyclerView.Adapter<RecyclerView.ViewHolde
 
     @Override
     public void onBindViewHolder(@NonNull RecyclerView.ViewHolder holder, int position) {
-        final Item item = mItems.get(position);
+        final Row row = mDiffer.getCurrentList().get(position);
         if (holder instanceof HeaderViewHolder) {
-            ((HeaderViewHolder) holder).bind(item);
+            ((HeaderViewHolder) holder).bind(row);
         } else {
-            ((ItemViewHolder) holder).bind(item);
+            ((ItemViewHolder) holder).bind(row);
         }
         holder.itemView.setTag(holder);
     }
@@ -81,7 +144,8 @@ public class ItemListAdapter extends RecyclerView.Adapter<RecyclerView.ViewHolde
         RecyclerView.ViewHolder holder = (RecyclerView.ViewHolder) view.getTag();
         int position = holder.getBindingAdapterPosition();
         if (position != RecyclerView.NO_POSITION) {
-            mItemClickListener.onItemClick(mItems.get(position), position);
+            mItemClickListener.onItemClick(mDiffer.getCurrentList().get(position).mItem,
+                    position);
         }
     }
 
@@ -93,8 +157,8 @@ public class ItemListAdapter extends RecyclerView.Adapter<RecyclerView.ViewHolde
             mTitleView = view.findViewById(android.R.id.title);
         }
 
-        private void bind(Item item) {
-            mTitleView.setText(item.getTitle(itemView.getContext()));
+        private void bind(Row row) {
+            mTitleView.setText(row.mTitle);
         }
     }
 
@@ -108,10 +172,10 @@ public class ItemListAdapter extends RecyclerView.Adapter<RecyclerView.ViewHolde
             mSummaryView = view.findViewById(android.R.id.summary);
         }
 
-        private void bind(Item item) {
-            String title = item.getTitle(itemView.getContext());
-            String summary = item.getSummary(itemView.getContext());
-            boolean enabled = item.isEnabled(itemView.getContext());
+        private void bind(Row row) {
+            String title = row.mTitle;
+            String summary = row.mSummary;
+            boolean enabled = row.mEnabled;
 
             mTitleView.setText(title);
             mTitleView.setVisibility(title != null ? View.VISIBLE : View.GONE);
@@ -62,4 +62,9 @@ public class ConnectionOverrideItem extends Item {
     public ConnectionSettings getSettings() {
         return mConnectionSettings;
     }
+
+    @Override
+    protected int getIdKey() {
+        return mConnectionSettings.getConnectionId();
+    }
 }
@@ -30,4 +30,9 @@ public class DisabledItem extends Item {
     public boolean isEnabled(Context context) {
         return false;
     }
+
+    @Override
+    protected int getIdKey() {
+        return mResTitle;
+    }
 }
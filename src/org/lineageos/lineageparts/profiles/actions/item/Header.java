@@ -14,6 +14,11 @@ public class Header extends Item {
         mNameResId = nameResId;
     }
 
+    @Override
+    protected int getIdKey() {
+        return mNameResId;
+    }
+
     @Override
     public boolean isHeader() {
         return true;
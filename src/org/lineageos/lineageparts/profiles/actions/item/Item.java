@@ -18,4 +18,16 @@ public abstract class Item {
     public boolean isEnabled(Context context) {
         return true;
     }
+
+    /**
+     * @return an id which identifies the item across rebuilds of the item list
+     */
+    public long getId() {
+        return ((long) getClass().getName().hashCode() << 32) | (getIdKey() & 0xffffffffL);
+    }
+
+    /* returns the key telling apart the items of the same class. */
+    protected int getIdKey() {
+        return 0;
+    }
 }
@@ -32,6 +32,11 @@ public class TriggerItem extends Item {
         return mTriggerType;
     }
 
+    @Override
+    protected int getIdKey() {
+        return mTriggerType;
+    }
+
     @Override
     public String getTitle(Context context) {
         return context.getString(getTitleString(mTriggerType));
@@ -67,4 +67,9 @@ public class VolumeStreamItem extends Item {
     public StreamSettings getSettings() {
         return mStreamSettings;
     }
+
+    @Override
+    protected int getIdKey() {
+        return mStreamId;
+    }
 }
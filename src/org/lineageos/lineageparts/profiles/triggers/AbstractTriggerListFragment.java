@@ -5,11 +5,22 @@
 
 package org.lineageos.lineageparts.profiles.triggers;
 
+import android.content.BroadcastReceiver;
+import android.content.Context;
 import android.content.Intent;
+import android.content.IntentFilter;
 import android.content.res.Resources;
 import android.os.Bundle;
+import android.os.CancellationSignal;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.util.ArrayMap;
+import android.util.SparseArray;
 
 import androidx.annotation.NonNull;
+import androidx.recyclerview.widget.AsyncListDiffer;
+import androidx.recyclerview.widget.DiffUtil;
 import androidx.recyclerview.widget.LinearLayoutManager;
 import androidx.recyclerview.widget.RecyclerView;
 import android.view.LayoutInflater;
@@ -27,44 +38,74 @@ import lineageos.app.ProfileManager;
 
 import org.lineageos.lineageparts.R;
 import org.lineageos.lineageparts.profiles.ProfilesSettings;
+import org.lineageos.lineageparts.utils.BackgroundExecutor;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
 
+/**
+ * Base of the trigger lists. The triggers are loaded from their source in the background,
+ * ranked by the signal of the nearby sources, and diffed so that only the rows which
+ * changed are bound again.
+ */
 public abstract class AbstractTriggerListFragment extends Fragment {
+    // Signals older than this don't rank their trigger anymore
+    private static final long MAX_SIGNAL_AGE_MS = 5 * 60 * 1000;
+    // Age at which a signal ranks like one which is 1 dBm weaker
+    private static final long SIGNAL_AGE_PER_DB_MS = 10 * 1000;
+
     private ProfileManager mProfileManager;
     private Profile mProfile;
 
-    private final List<AbstractTriggerItem> mTriggers = new ArrayList<>();
+    private final Handler mHandler = new Handler(Looper.getMainLooper());
+
+    // Options of the trigger dialog, parsed once from the option arrays
+    private int[] mOptionValues;
+    private String[] mOptionEntries;
+    private final SparseArray<String> mStateLabels = new SparseArray<>();
+
+    // Triggers of the last load of the trigger source, only accessed on the main thread
+    private List<AbstractTriggerItem> mTriggers = Collections.emptyList();
+    private boolean mTriggersLoaded;
+    private CancellationSignal mLoadSignal;
+
+    // Latest signals of the nearby trigger sources by trigger id, only accessed on the main thread
+    private final ArrayMap<String, Signal> mSignals = new ArrayMap<>();
+    private CancellationSignal mSignalsLoadSignal;
+    private boolean mSignalReceiverRegistered;
+
+    private final BroadcastReceiver mSignalReceiver = new BroadcastReceiver() {
+        @Override
+        public void onReceive(Context context, Intent intent) {
+            onSignalIntent(intent);
+        }
+    };
 
     private View mEmptyView;
     private RecyclerView mRecyclerView;
     private TriggerAdapter mAdapter;
 
     private final TriggerAdapter.ItemClickListener mItemClickListener = item -> {
-        final Resources res = getResources();
-        final String[] possibleEntries = res.getStringArray(getOptionArrayResId());
-        final String[] possibleValues = res.getStringArray(getOptionValuesArrayResId());
-        final ArrayList<Trigger> triggers = new ArrayList<>();
         final TriggerInfo info = onConvertToTriggerInfo(item);
-
-        for (int i = 0; i < possibleEntries.length; i++) {
-            Trigger toAdd = new Trigger();
-            toAdd.value = Integer.parseInt(possibleValues[i]);
-            toAdd.name = possibleEntries[i];
-            if (isTriggerStateSupported(info, toAdd.value)) {
-                triggers.add(toAdd);
+        final String[] entries = new String[mOptionValues.length];
+        final int[] valueInts = new int[mOptionValues.length];
+        int count = 0;
+
+        for (int i = 0; i < mOptionValues.length; i++) {
+            if (isTriggerStateSupported(info, mOptionValues[i])) {
+                entries[count] = mOptionEntries[i];
+                valueInts[count] = mOptionValues[i];
+                count++;
             }
         }
 
-        final String[] entries = new String[triggers.size()];
-        final int[] valueInts = new int[triggers.size()];
         int currentTriggerState = mProfile.getTriggerState(info.type, info.id);
         int currentItem = -1;
-        for (int i = 0; i < triggers.size(); i++) {
-            Trigger t = triggers.get(i);
-            entries[i] = t.name;
-            valueInts[i] = t.value;
+        for (int i = 0; i < count; i++) {
             if (valueInts[i] == currentTriggerState) {
                 currentItem = i;
             }
@@ -72,10 +113,12 @@ public abstract class AbstractTriggerListFragment extends Fragment {
 
         new AlertDialog.Builder(requireActivity())
                 .setTitle(R.string.profile_trigger_configure)
-                .setSingleChoiceItems(entries, currentItem, (dialog, which) -> {
+                .setSingleChoiceItems(Arrays.copyOf(entries, count), currentItem,
+                        (dialog, which) -> {
                     mProfile.setTrigger(info.type, info.id, valueInts[which], info.name);
                     mProfileManager.updateProfile(mProfile);
-                    updateTriggerList();
+                    // The trigger source didn't change, only the states need an update
+                    updateTriggerStates();
                     dialog.dismiss();
                 })
                 .show();
@@ -94,6 +137,7 @@ public abstract class AbstractTriggerListFragment extends Fragment {
         if (getArguments() != null) {
             mProfile = getArguments().getParcelable(ProfilesSettings.EXTRA_PROFILE, Profile.class);
         }
+        loadOptions();
     }
 
     @Override
@@ -106,6 +150,8 @@ public abstract class AbstractTriggerListFragment extends Fragment {
 
         mEmptyView = emptyViewStub.inflate();
         mEmptyView.setOnClickListener(v -> startActivity(getEmptyViewClickIntent()));
+        // Only shown once the triggers are loaded
+        mEmptyView.setVisibility(View.GONE);
 
         mRecyclerView = view.findViewById(android.R.id.list);
 
@@ -115,7 +161,7 @@ public abstract class AbstractTriggerListFragment extends Fragment {
     @Override
     public void onViewCreated(@NonNull View view, Bundle savedInstanceState) {
         super.onViewCreated(view, savedInstanceState);
-        mAdapter = new TriggerAdapter(mTriggers, mItemClickListener);
+        mAdapter = new TriggerAdapter(mItemClickListener);
         mRecyclerView.setAdapter(mAdapter);
         mRecyclerView.setLayoutManager(new LinearLayoutManager(getActivity()));
     }
@@ -123,10 +169,40 @@ public abstract class AbstractTriggerListFragment extends Fragment {
     @Override
     public void onResume() {
         super.onResume();
-        updateTriggerList();
+        final IntentFilter filter = getSignalIntentFilter();
+        if (filter != null) {
+            requireActivity().registerReceiver(mSignalReceiver, filter);
+            mSignalReceiverRegistered = true;
+        }
+        loadTriggers();
     }
 
-    protected abstract void onLoadTriggers(Profile profile, List<AbstractTriggerItem> triggers);
+    @Override
+    public void onPause() {
+        super.onPause();
+        if (mSignalReceiverRegistered) {
+            requireActivity().unregisterReceiver(mSignalReceiver);
+            mSignalReceiverRegistered = false;
+        }
+        if (mLoadSignal != null) {
+            mLoadSignal.cancel();
+            mLoadSignal = null;
+        }
+        if (mSignalsLoadSignal != null) {
+            mSignalsLoadSignal.cancel();
+            mSignalsLoadSignal = null;
+        }
+    }
+
+    /**
+     * Loads the triggers of the trigger source. Called on a background thread, so it must
+     * neither touch the views nor the profile.
+     *
+     * @param profileTriggers the triggers of the profile for {@link #getTriggerType()}
+     */
+    protected abstract void onLoadTriggers(List<Profile.ProfileTrigger> profileTriggers,
+            List<AbstractTriggerItem> triggers);
+    protected abstract int getTriggerType();
     protected abstract TriggerInfo onConvertToTriggerInfo(AbstractTriggerItem trigger);
     protected abstract boolean isTriggerStateSupported(TriggerInfo info, int triggerState);
     protected abstract int getEmptyViewLayoutResId();
@@ -134,30 +210,163 @@ public abstract class AbstractTriggerListFragment extends Fragment {
     protected abstract int getOptionArrayResId();
     protected abstract int getOptionValuesArrayResId();
 
-    protected void initTriggerItemFromState(AbstractTriggerItem trigger, int state, int iconResId) {
-        final String[] values = getResources().getStringArray(getOptionValuesArrayResId());
-        for (int i = 0; i < values.length; i++) {
-            if (Integer.parseInt(values[i]) == state) {
-                trigger.setSummary(getResources().getStringArray(getOptionArrayResId())[i]);
-                break;
+    /**
+     * Loads the latest signals of the nearby trigger sources, by trigger id. Called on a
+     * background thread.
+     */
+    protected Map<String, Signal> onLoadSignals() {
+        return Collections.emptyMap();
+    }
+
+    /* returns the broadcasts which carry new signals, or null if the source has none. */
+    protected IntentFilter getSignalIntentFilter() {
+        return null;
+    }
+
+    /**
+     * Called on the main thread for the broadcasts of {@link #getSignalIntentFilter()}, to
+     * either {@link #updateSignals(Map)} or {@link #reloadSignals()}.
+     */
+    protected void onSignalIntent(Intent intent) {
+    }
+
+    /**
+     * Merges new signals and ranks the triggers again, a null signal drops the one of its
+     * trigger. A connected signal is only dropped that way, seen ones don't replace it.
+     * Must be called on the main thread.
+     */
+    protected final void updateSignals(Map<String, Signal> signals) {
+        for (Map.Entry<String, Signal> entry : signals.entrySet()) {
+            final Signal signal = entry.getValue();
+            if (signal == null) {
+                mSignals.remove(entry.getKey());
+                continue;
+            }
+            final Signal current = mSignals.get(entry.getKey());
+            if (current == null || !current.mConnected || signal.mConnected) {
+                mSignals.put(entry.getKey(), signal);
             }
         }
-        trigger.setTriggerState(state);
-        trigger.setIcon(iconResId);
+        updateTriggerStates();
+    }
+
+    /**
+     * Loads the signals again in the background, e.g. once a new scan batch is available.
+     */
+    protected final void reloadSignals() {
+        if (mSignalsLoadSignal != null) {
+            mSignalsLoadSignal.cancel();
+        }
+        mSignalsLoadSignal = BackgroundExecutor.get().execute(
+                getClass().getSimpleName() + "#signals", signal -> {
+            final Map<String, Signal> signals = onLoadSignals();
+            mHandler.post(() -> {
+                if (!signal.isCanceled()) {
+                    updateSignals(signals);
+                }
+            });
+        });
     }
 
-    private void updateTriggerList() {
-        mTriggers.clear();
-        onLoadTriggers(mProfile, mTriggers);
-        mAdapter.notifyDataSetChanged();
+    private void loadOptions() {
+        final Resources res = getResources();
+        final String[] values = res.getStringArray(getOptionValuesArrayResId());
+        mOptionEntries = res.getStringArray(getOptionArrayResId());
+        mOptionValues = new int[values.length];
+        for (int i = 0; i < values.length; i++) {
+            mOptionValues[i] = Integer.parseInt(values[i]);
+            mStateLabels.put(mOptionValues[i], mOptionEntries[i]);
+        }
+    }
 
-        mRecyclerView.setVisibility(mTriggers.isEmpty() ? View.GONE : View.VISIBLE);
-        mEmptyView.setVisibility(mTriggers.isEmpty() ? View.VISIBLE : View.GONE);
+    private void loadTriggers() {
+        if (mLoadSignal != null) {
+            mLoadSignal.cancel();
+        }
+        final List<Profile.ProfileTrigger> profileTriggers =
+                new ArrayList<>(mProfile.getTriggersFromType(getTriggerType()));
+        mLoadSignal = BackgroundExecutor.get().execute(getClass().getSimpleName(), signal -> {
+            final List<AbstractTriggerItem> triggers = new ArrayList<>();
+            onLoadTriggers(profileTriggers, triggers);
+            final Map<String, Signal> signals = onLoadSignals();
+            mHandler.post(() -> {
+                if (!signal.isCanceled()) {
+                    mTriggers = triggers;
+                    mTriggersLoaded = true;
+                    // Disconnects are missed while paused, the loaded signals have the
+                    // current connections
+                    mSignals.values().removeIf(existing -> existing.mConnected);
+                    updateSignals(signals);
+                }
+            });
+        });
     }
 
-    private static class Trigger {
-        int value;
-        String name;
+    private void updateTriggerStates() {
+        if (!mTriggersLoaded) {
+            // Signals may come in first, they are applied once the triggers are there
+            return;
+        }
+        final long now = SystemClock.elapsedRealtime();
+        final List<TriggerRow> rows = new ArrayList<>(mTriggers.size());
+        for (AbstractTriggerItem trigger : mTriggers) {
+            final TriggerInfo info = onConvertToTriggerInfo(trigger);
+            final int state = mProfile.getTriggerState(info.type, info.id);
+            trigger.setTriggerState(state);
+            trigger.setSummary(mStateLabels.get(state));
+            rows.add(new TriggerRow(trigger, info.id, getSignalScore(mSignals.get(info.id), now)));
+        }
+        // Nearby sources first, the others keep the order of the source as the sort is stable
+        rows.sort((row1, row2) -> Integer.compare(row2.mScore, row1.mScore));
+        // Only the rows whose content changed are bound again
+        mAdapter.submitRows(rows);
+
+        mRecyclerView.setVisibility(rows.isEmpty() ? View.GONE : View.VISIBLE);
+        mEmptyView.setVisibility(rows.isEmpty() ? View.VISIBLE : View.GONE);
+    }
+
+    private static int getSignalScore(Signal signal, long now) {
+        if (signal == null) {
+            return Integer.MIN_VALUE;
+        }
+        if (signal.mConnected) {
+            // Connected sources rank first for as long as they stay connected
+            return Integer.MAX_VALUE;
+        }
+        final long age = Math.max(0, now - signal.mTimestampMs);
+        if (age > MAX_SIGNAL_AGE_MS) {
+            return Integer.MIN_VALUE;
+        }
+        return signal.mRssi - (int) (age / SIGNAL_AGE_PER_DB_MS);
+    }
+
+    /**
+     * Signal of a nearby trigger source.
+     */
+    protected static final class Signal {
+        final int mRssi;
+        final long mTimestampMs;
+        // Connected sources are as near as it gets, until they disconnect
+        final boolean mConnected;
+
+        /**
+         * @param rssi the signal strength in dBm
+         * @param timestampMs the {@link SystemClock#elapsedRealtime()} it was seen at
+         */
+        protected Signal(int rssi, long timestampMs) {
+            this(rssi, timestampMs, false);
+        }
+
+        private Signal(int rssi, long timestampMs, boolean connected) {
+            mRssi = rssi;
+            mTimestampMs = timestampMs;
+            mConnected = connected;
+        }
+
+        /* returns the signal of a connected source, which doesn't age. */
+        protected static Signal connected() {
+            return new Signal(0, 0, true);
+        }
     }
 
     protected static class TriggerInfo {
@@ -172,6 +381,25 @@ public abstract class AbstractTriggerListFragment extends Fragment {
         }
     }
 
+    // Rendered content of a trigger, as the trigger items are updated in place
+    private static final class TriggerRow {
+        final AbstractTriggerItem mTrigger;
+        final String mId;
+        final String mTitle;
+        final String mSummary;
+        final int mIcon;
+        final int mScore;
+
+        TriggerRow(AbstractTriggerItem trigger, String id, int score) {
+            mTrigger = trigger;
+            mId = id;
+            mScore = score;
+            mTitle = trigger.getTitle();
+            mSummary = trigger.getSummary();
+            mIcon = trigger.getIcon();
+        }
+    }
+
     private static class TriggerViewHolder extends RecyclerView.ViewHolder {
         private final TextView mTitleView;
         private final TextView mDescView;
@@ -184,10 +412,10 @@ public abstract class AbstractTriggerListFragment extends Fragment {
             mIconView = view.findViewById(R.id.icon);
         }
 
-        public void bind(AbstractTriggerItem trigger) {
-            mTitleView.setText(trigger.getTitle());
-            mDescView.setText(trigger.getSummary());
-            mIconView.setImageResource(trigger.getIcon());
+        public void bind(TriggerRow row) {
+            mTitleView.setText(row.mTitle);
+            mDescView.setText(row.mSummary);
+            mIconView.setImageResource(row.mIcon);
         }
     }
 
@@ -197,19 +425,39 @@ public abstract class AbstractTriggerListFragment extends Fragment {
             void onItemClick(AbstractTriggerItem item);
         }
 
-        private final List<AbstractTriggerItem> mTriggers;
+        private static final DiffUtil.ItemCallback<TriggerRow> DIFF_CALLBACK =
+                new DiffUtil.ItemCallback<>() {
+            @Override
+            public boolean areItemsTheSame(@NonNull TriggerRow oldRow,
+                    @NonNull TriggerRow newRow) {
+                return Objects.equals(oldRow.mId, newRow.mId);
+            }
+
+            @Override
+            public boolean areContentsTheSame(@NonNull TriggerRow oldRow,
+                    @NonNull TriggerRow newRow) {
+                return Objects.equals(oldRow.mTitle, newRow.mTitle)
+                        && Objects.equals(oldRow.mSummary, newRow.mSummary)
+                        && oldRow.mIcon == newRow.mIcon;
+            }
+        };
+
+        private final AsyncListDiffer<TriggerRow> mDiffer;
         private final ItemClickListener mItemClickListener;
 
-        public TriggerAdapter(List<AbstractTriggerItem> triggers,
-                ItemClickListener itemClickListener) {
+        public TriggerAdapter(ItemClickListener itemClickListener) {
             super();
-            mTriggers = triggers;
+            mDiffer = new AsyncListDiffer<>(this, DIFF_CALLBACK);
             mItemClickListener = itemClickListener;
         }
 
+        void submitRows(List<TriggerRow> rows) {
+            mDiffer.submitList(rows);
+        }
+
         @Override
         public int getItemCount() {
-            return mTriggers.size();
+            return mDiffer.getCurrentList().size();
         }
 
         @NonNull
@@ -224,7 +472,7 @@ public abstract class AbstractTriggerListFragment extends Fragment {
 
         @Override
         public void onBindViewHolder(TriggerViewHolder holder, int position) {
-            holder.bind(mTriggers.get(position));
+            holder.bind(mDiffer.getCurrentList().get(position));
             holder.itemView.setTag(holder);
         }
 
@@ -233,7 +481,7 @@ public abstract class AbstractTriggerListFragment extends Fragment {
             TriggerViewHolder holder = (TriggerViewHolder) view.getTag();
             int position = holder.getBindingAdapterPosition();
             if (position != RecyclerView.NO_POSITION) {
-                mItemClickListener.onItemClick(mTriggers.get(position));
+                mItemClickListener.onItemClick(mDiffer.getCurrentList().get(position).mTrigger);
             }
         }
     }
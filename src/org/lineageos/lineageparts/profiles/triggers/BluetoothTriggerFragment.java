@@ -11,14 +11,19 @@ import android.bluetooth.BluetoothDevice;
 import android.bluetooth.BluetoothManager;
 import android.content.Context;
 import android.content.Intent;
+import android.content.IntentFilter;
 import android.os.Bundle;
+import android.os.SystemClock;
 import android.provider.Settings;
+import android.util.ArrayMap;
 
 import lineageos.app.Profile;
 
 import org.lineageos.lineageparts.R;
 
+import java.util.Collections;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 public class BluetoothTriggerFragment extends AbstractTriggerListFragment {
@@ -39,28 +44,81 @@ public class BluetoothTriggerFragment extends AbstractTriggerListFragment {
     }
 
     @Override
-    protected void onLoadTriggers(Profile profile, List<AbstractTriggerItem> triggers) {
+    protected void onLoadTriggers(List<Profile.ProfileTrigger> profileTriggers,
+            List<AbstractTriggerItem> triggers) {
         final Set<BluetoothDevice> pairedDevices = mBluetoothAdapter.getBondedDevices();
 
         if (!pairedDevices.isEmpty()) {
             for (BluetoothDevice device : pairedDevices) {
                 BluetoothTrigger bt = new BluetoothTrigger(device);
-                int state = profile.getTriggerState(
-                        Profile.TriggerType.BLUETOOTH, bt.getAddress());
-                initTriggerItemFromState(bt, state, R.drawable.ic_settings_bluetooth);
+                bt.setIcon(R.drawable.ic_settings_bluetooth);
                 triggers.add(bt);
             }
         } else {
-            final List<Profile.ProfileTrigger> origTriggers =
-                    profile.getTriggersFromType(Profile.TriggerType.BLUETOOTH);
-            for (Profile.ProfileTrigger trigger : origTriggers) {
+            for (Profile.ProfileTrigger trigger : profileTriggers) {
                 BluetoothTrigger bt = new BluetoothTrigger(trigger.getName(), trigger.getId());
-                initTriggerItemFromState(bt, trigger.getState(), R.drawable.ic_settings_bluetooth);
+                bt.setIcon(R.drawable.ic_settings_bluetooth);
                 triggers.add(bt);
             }
         }
     }
 
+    @Override
+    protected int getTriggerType() {
+        return Profile.TriggerType.BLUETOOTH;
+    }
+
+    @Override
+    protected Map<String, Signal> onLoadSignals() {
+        // The RSSI of bonded devices is only known while discovering, so the connected
+        // devices rank first and the others are ranked as discoveries find them
+        final ArrayMap<String, Signal> signals = new ArrayMap<>();
+        for (BluetoothDevice device : mBluetoothAdapter.getBondedDevices()) {
+            if (device.isConnected()) {
+                signals.put(device.getAddress(), Signal.connected());
+            }
+        }
+        return signals;
+    }
+
+    @Override
+    protected IntentFilter getSignalIntentFilter() {
+        final IntentFilter filter = new IntentFilter();
+        filter.addAction(BluetoothDevice.ACTION_FOUND);
+        filter.addAction(BluetoothDevice.ACTION_ACL_CONNECTED);
+        filter.addAction(BluetoothDevice.ACTION_ACL_DISCONNECTED);
+        return filter;
+    }
+
+    @Override
+    protected void onSignalIntent(Intent intent) {
+        final BluetoothDevice device =
+                intent.getParcelableExtra(BluetoothDevice.EXTRA_DEVICE, BluetoothDevice.class);
+        if (device == null || device.getBondState() != BluetoothDevice.BOND_BONDED) {
+            return;
+        }
+
+        final Signal signal;
+        switch (intent.getAction()) {
+            case BluetoothDevice.ACTION_FOUND:
+                // Found by a discovery started by someone else, we don't start any. This
+                // doesn't replace the signal of a connected device
+                if (!intent.hasExtra(BluetoothDevice.EXTRA_RSSI)) {
+                    return;
+                }
+                signal = new Signal(intent.getShortExtra(BluetoothDevice.EXTRA_RSSI,
+                        Short.MIN_VALUE), SystemClock.elapsedRealtime());
+                break;
+            case BluetoothDevice.ACTION_ACL_CONNECTED:
+                signal = Signal.connected();
+                break;
+            default:
+                signal = null;
+                break;
+        }
+        updateSignals(Collections.singletonMap(device.getAddress(), signal));
+    }
+
     @Override
     protected TriggerInfo onConvertToTriggerInfo(AbstractTriggerItem trigger) {
         BluetoothTrigger bt = (BluetoothTrigger) trigger;
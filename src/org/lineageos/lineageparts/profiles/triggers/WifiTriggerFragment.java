@@ -6,10 +6,14 @@
 package org.lineageos.lineageparts.profiles.triggers;
 
 import android.content.Intent;
+import android.content.IntentFilter;
+import android.net.wifi.ScanResult;
 import android.net.wifi.WifiConfiguration;
 import android.net.wifi.WifiManager;
 import android.os.Bundle;
 import android.provider.Settings;
+import android.text.TextUtils;
+import android.util.ArrayMap;
 
 import lineageos.app.Profile;
 
@@ -17,6 +21,7 @@ import org.lineageos.lineageparts.R;
 
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 
 public class WifiTriggerFragment extends AbstractTriggerListFragment {
     private WifiManager mWifiManager;
@@ -34,32 +39,66 @@ public class WifiTriggerFragment extends AbstractTriggerListFragment {
     }
 
     @Override
-    protected void onLoadTriggers(Profile profile, List<AbstractTriggerItem> triggers) {
+    protected void onLoadTriggers(List<Profile.ProfileTrigger> profileTriggers,
+            List<AbstractTriggerItem> triggers) {
         final List<WifiConfiguration> configs = mWifiManager.getConfiguredNetworks();
         final HashSet<String> alreadyAdded = new HashSet<>();
 
         if (configs != null) {
             for (WifiConfiguration config : configs) {
                 WifiTrigger accessPoint = new WifiTrigger(config);
-                String ssid = accessPoint.getSSID();
-                int state = profile.getTriggerState(Profile.TriggerType.WIFI, ssid);
-                initTriggerItemFromState(accessPoint, state, R.drawable.ic_wifi_signal_4);
-                if (alreadyAdded.add(ssid)) {
+                if (alreadyAdded.add(accessPoint.getSSID())) {
+                    accessPoint.setIcon(R.drawable.ic_wifi_signal_4);
                     triggers.add(accessPoint);
                 }
             }
         } else {
-            final List<Profile.ProfileTrigger> origTriggers =
-                    profile.getTriggersFromType(Profile.TriggerType.WIFI);
-            for (Profile.ProfileTrigger trigger : origTriggers) {
+            for (Profile.ProfileTrigger trigger : profileTriggers) {
                 WifiTrigger accessPoint = new WifiTrigger(trigger.getName());
-                initTriggerItemFromState(accessPoint,
-                        trigger.getState(), R.drawable.ic_wifi_signal_4);
+                accessPoint.setIcon(R.drawable.ic_wifi_signal_4);
                 triggers.add(accessPoint);
             }
         }
     }
 
+    @Override
+    protected int getTriggerType() {
+        return Profile.TriggerType.WIFI;
+    }
+
+    @Override
+    protected Map<String, Signal> onLoadSignals() {
+        // Only the cached results of the last scan, no scan is started
+        final List<ScanResult> results = mWifiManager.getScanResults();
+        final ArrayMap<String, Signal> signals = new ArrayMap<>();
+        if (results == null) {
+            return signals;
+        }
+        for (ScanResult result : results) {
+            if (TextUtils.isEmpty(result.SSID)) {
+                continue;
+            }
+            // The timestamp is in microseconds since boot
+            final Signal signal = new Signal(result.level, result.timestamp / 1000);
+            final Signal previous = signals.get(result.SSID);
+            // Keep the strongest access point of the network
+            if (previous == null || previous.mRssi < signal.mRssi) {
+                signals.put(result.SSID, signal);
+            }
+        }
+        return signals;
+    }
+
+    @Override
+    protected IntentFilter getSignalIntentFilter() {
+        return new IntentFilter(WifiManager.SCAN_RESULTS_AVAILABLE_ACTION);
+    }
+
+    @Override
+    protected void onSignalIntent(Intent intent) {
+        reloadSignals();
+    }
+
     @Override
     protected TriggerInfo onConvertToTriggerInfo(AbstractTriggerItem trigger) {
         WifiTrigger wifi = (WifiTrigger) trigger;
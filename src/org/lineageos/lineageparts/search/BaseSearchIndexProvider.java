@@ -24,4 +24,9 @@ public class BaseSearchIndexProvider implements Searchable.SearchIndexProvider {
     public Set<String> getNonIndexableKeys(Context context) {
         return null;
     }
+
+    @Override
+    public String getRawDataVersion(Context context) {
+        return null;
+    }
 }
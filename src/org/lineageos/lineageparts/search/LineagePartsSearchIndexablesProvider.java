@@ -5,8 +5,11 @@
  */
 package org.lineageos.lineageparts.search;
 
+import android.Manifest;
 import android.database.Cursor;
 import android.database.MatrixCursor;
+import android.os.Build;
+import android.os.Bundle;
 import android.provider.SearchIndexablesProvider;
 import android.util.ArraySet;
 import android.util.Log;
@@ -14,10 +17,15 @@ import android.util.Log;
 import lineageos.preference.PartInfo;
 import lineageos.preference.PartsList;
 
+import org.lineageos.lineageparts.PartProviders;
+import org.lineageos.lineageparts.gestures.TouchscreenGestureSettings;
 import org.lineageos.lineageparts.search.Searchable.SearchIndexProvider;
+import org.lineageos.lineageparts.utils.BackgroundExecutor;
 import org.lineageos.platform.internal.R;
 
-import java.lang.reflect.Field;
+import java.io.FileDescriptor;
+import java.io.PrintWriter;
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
 import java.util.Set;
@@ -58,9 +66,13 @@ import static lineageos.preference.PartsList.LINEAGEPARTS_ACTIVITY;
 public class LineagePartsSearchIndexablesProvider extends SearchIndexablesProvider {
 
     private static final String TAG = LineagePartsSearchIndexablesProvider.class.getSimpleName();
+    private static final boolean DEBUG = Log.isLoggable(TAG, Log.DEBUG);
+    private static final String SAVE_SNAPSHOT_TASK_KEY = TAG + "#save";
 
-    private static final String FIELD_NAME_SEARCH_INDEX_DATA_PROVIDER =
-            "SEARCH_INDEX_DATA_PROVIDER";
+    public static final String METHOD_GET_INDEX_TOKEN = "get_index_token";
+    public static final String EXTRA_INDEX_TOKEN = "index_token";
+
+    private SearchIndexSnapshot mSnapshot;
 
     @Override
     public Cursor queryXmlResources(String[] strings) {
@@ -94,6 +106,9 @@ public class LineagePartsSearchIndexablesProvider extends SearchIndexablesProvid
     public Cursor queryRawData(String[] strings) {
         MatrixCursor cursor = new MatrixCursor(INDEXABLES_RAW_COLUMNS);
         final Set<String> keys = PartsList.get(getContext()).getPartsList();
+        final SearchIndexSnapshot snapshot = getSnapshot();
+        final Set<String> indexed = new ArraySet<>();
+        int recomputed = 0;
 
         // we also submit keywords and metadata for all top-level items
         // which don't have an associated XML resource
@@ -104,53 +119,117 @@ public class LineagePartsSearchIndexablesProvider extends SearchIndexablesProvid
             }
 
             // look for custom keywords
-            SearchIndexProvider sip = getSearchIndexProvider(i.getFragmentClass());
+            SearchIndexProvider sip = PartProviders.getSearchIndexProvider(i.getFragmentClass());
             if (sip == null) {
                 continue;
             }
 
-            // don't create a duplicate entry if no custom keywords are provided
-            // and a resource was already indexed
-            List<SearchIndexableRaw> rawList = sip.getRawDataToIndex(getContext());
-            if (rawList == null || rawList.size() == 0) {
-                if (i.getXmlRes() > 0) {
-                    continue;
-                }
-                rawList = Collections.singletonList(new SearchIndexableRaw(getContext()));
+            // only ask the provider again if anything its rows depend on changed
+            final String hash = computePartHash(i, sip);
+            List<Object[]> rows = snapshot.getRows(key, hash);
+            if (rows == null) {
+                rows = buildRawRows(i, sip);
+                snapshot.putRows(key, hash, rows);
+                recomputed++;
             }
+            indexed.add(key);
 
-            for (SearchIndexableRaw raw : rawList) {
-                Object[] ref = new Object[INDEXABLES_RAW_COLUMNS.length];
-                ref[COLUMN_INDEX_RAW_RANK] = raw.rank > 0 ?
-                        raw.rank : 2;
-                ref[COLUMN_INDEX_RAW_TITLE] = raw.title != null ?
-                        raw.title : i.getTitle();
-                ref[COLUMN_INDEX_RAW_SUMMARY_ON] = i.getSummary();
-                ref[COLUMN_INDEX_RAW_SUMMARY_OFF] = null;
-                ref[COLUMN_INDEX_RAW_ENTRIES] = raw.entries;
-                ref[COLUMN_INDEX_RAW_KEYWORDS] = raw.keywords;
-                ref[COLUMN_INDEX_RAW_SCREEN_TITLE] = raw.screenTitle != null ?
-                        raw.screenTitle : i.getTitle();
-                ref[COLUMN_INDEX_RAW_CLASS_NAME] = null;
-                ref[COLUMN_INDEX_RAW_ICON_RESID] = raw.iconResId > 0 ? raw.iconResId :
-                        (i.getIconRes() > 0 ? i.getIconRes() : R.drawable.ic_launcher_lineageos);
-                ref[COLUMN_INDEX_RAW_INTENT_ACTION] = raw.intentAction != null ?
-                        raw.intentAction : i.getAction();
-                ref[COLUMN_INDEX_RAW_INTENT_TARGET_PACKAGE] = raw.intentTargetPackage != null ?
-                        raw.intentTargetPackage : LINEAGEPARTS_ACTIVITY.getPackageName();
-                ref[COLUMN_INDEX_RAW_INTENT_TARGET_CLASS] = raw.intentTargetClass != null ?
-                        raw.intentTargetClass : LINEAGEPARTS_ACTIVITY.getClassName();
-                ref[COLUMN_INDEX_RAW_KEY] = raw.key != null ?
-                        raw.key : i.getName();
-                ref[COLUMN_INDEX_RAW_USER_ID] = -1;
-                ref[COLUMN_INDEX_RAW_PAYLOAD_TYPE] = null;
-                ref[COLUMN_INDEX_RAW_PAYLOAD] = null;
+            for (Object[] ref : rows) {
                 cursor.addRow(ref);
             }
         }
+
+        snapshot.retainAll(indexed);
+        if (snapshot.isDirty()) {
+            // Keep the file write off the query, a newer save supersedes a pending one
+            BackgroundExecutor.get().executeExclusive(SAVE_SNAPSHOT_TASK_KEY,
+                    signal -> snapshot.saveIfNeeded());
+        }
+        if (DEBUG) {
+            Log.d(TAG, "Recomputed raw data of " + recomputed + "/" + indexed.size() + " parts");
+        }
         return cursor;
     }
 
+    private List<Object[]> buildRawRows(PartInfo i, SearchIndexProvider sip) {
+        // don't create a duplicate entry if no custom keywords are provided
+        // and a resource was already indexed
+        List<SearchIndexableRaw> rawList = sip.getRawDataToIndex(getContext());
+        if (rawList == null || rawList.size() == 0) {
+            if (i.getXmlRes() > 0) {
+                return Collections.emptyList();
+            }
+            rawList = Collections.singletonList(new SearchIndexableRaw(getContext()));
+        }
+
+        List<Object[]> rows = new ArrayList<>(rawList.size());
+        for (SearchIndexableRaw raw : rawList) {
+            Object[] ref = new Object[INDEXABLES_RAW_COLUMNS.length];
+            ref[COLUMN_INDEX_RAW_RANK] = raw.rank > 0 ?
+                    raw.rank : 2;
+            ref[COLUMN_INDEX_RAW_TITLE] = raw.title != null ?
+                    raw.title : i.getTitle();
+            ref[COLUMN_INDEX_RAW_SUMMARY_ON] = i.getSummary();
+            ref[COLUMN_INDEX_RAW_SUMMARY_OFF] = null;
+            ref[COLUMN_INDEX_RAW_ENTRIES] = raw.entries;
+            ref[COLUMN_INDEX_RAW_KEYWORDS] = raw.keywords;
+            ref[COLUMN_INDEX_RAW_SCREEN_TITLE] = raw.screenTitle != null ?
+                    raw.screenTitle : i.getTitle();
+            ref[COLUMN_INDEX_RAW_CLASS_NAME] = null;
+            ref[COLUMN_INDEX_RAW_ICON_RESID] = raw.iconResId > 0 ? raw.iconResId :
+                    (i.getIconRes() > 0 ? i.getIconRes() : R.drawable.ic_launcher_lineageos);
+            ref[COLUMN_INDEX_RAW_INTENT_ACTION] = raw.intentAction != null ?
+                    raw.intentAction : i.getAction();
+            ref[COLUMN_INDEX_RAW_INTENT_TARGET_PACKAGE] = raw.intentTargetPackage != null ?
+                    raw.intentTargetPackage : LINEAGEPARTS_ACTIVITY.getPackageName();
+            ref[COLUMN_INDEX_RAW_INTENT_TARGET_CLASS] = raw.intentTargetClass != null ?
+                    raw.intentTargetClass : LINEAGEPARTS_ACTIVITY.getClassName();
+            ref[COLUMN_INDEX_RAW_KEY] = raw.key != null ?
+                    raw.key : i.getName();
+            ref[COLUMN_INDEX_RAW_USER_ID] = -1;
+            ref[COLUMN_INDEX_RAW_PAYLOAD_TYPE] = null;
+            ref[COLUMN_INDEX_RAW_PAYLOAD] = null;
+            rows.add(ref);
+        }
+        return rows;
+    }
+
+    /**
+     * Hashes everything the raw rows of a part are computed from.
+     */
+    private String computePartHash(PartInfo i, SearchIndexProvider sip) {
+        return SearchIndexSnapshot.hash(Build.FINGERPRINT,
+                getContext().getResources().getConfiguration().getLocales().toLanguageTags(),
+                i.getName(), i.getTitle(), i.getSummary(), i.getAction(), i.getFragmentClass(),
+                String.valueOf(i.getXmlRes()), String.valueOf(i.getIconRes()),
+                sip.getRawDataVersion(getContext()));
+    }
+
+    /**
+     * Token which changes whenever the indexed data of any part changes, so the
+     * indexer can skip a full reindex if it already indexed the data of this token.
+     */
+    private String computeIndexToken() {
+        final StringBuilder sb = new StringBuilder();
+        for (String key : PartsList.get(getContext()).getPartsList()) {
+            PartInfo i = PartsList.get(getContext()).getPartInfo(key);
+            if (i == null || !i.isAvailable()) {
+                continue;
+            }
+            SearchIndexProvider sip = PartProviders.getSearchIndexProvider(i.getFragmentClass());
+            sb.append(key).append('=')
+                    .append(sip != null ? computePartHash(i, sip) : "").append(';');
+        }
+        return SearchIndexSnapshot.hash(sb.toString());
+    }
+
+    private synchronized SearchIndexSnapshot getSnapshot() {
+        if (mSnapshot == null) {
+            mSnapshot = new SearchIndexSnapshot(getContext());
+        }
+        return mSnapshot;
+    }
+
     @Override
     public Cursor queryNonIndexableKeys(String[] strings) {
         MatrixCursor cursor = new MatrixCursor(NON_INDEXABLES_KEYS_COLUMNS);
@@ -165,7 +244,7 @@ public class LineagePartsSearchIndexablesProvider extends SearchIndexablesProvid
             }
 
             // look for non-indexable keys
-            SearchIndexProvider sip = getSearchIndexProvider(i.getFragmentClass());
+            SearchIndexProvider sip = PartProviders.getSearchIndexProvider(i.getFragmentClass());
             if (sip == null) {
                 continue;
             }
@@ -186,39 +265,28 @@ public class LineagePartsSearchIndexablesProvider extends SearchIndexablesProvid
         return cursor;
     }
 
+    @Override
+    public Bundle call(String method, String arg, Bundle extras) {
+        if (METHOD_GET_INDEX_TOKEN.equals(method)) {
+            getContext().enforceCallingOrSelfPermission(
+                    Manifest.permission.READ_SEARCH_INDEXABLES, null);
+            Bundle result = new Bundle();
+            result.putString(EXTRA_INDEX_TOKEN, computeIndexToken());
+            return result;
+        }
+        return super.call(method, arg, extras);
+    }
+
     @Override
     public boolean onCreate() {
         return true;
     }
 
-    private SearchIndexProvider getSearchIndexProvider(final String className) {
-
-        final Class<?> clazz;
-        try {
-            clazz = Class.forName(className);
-        } catch (ClassNotFoundException e) {
-            Log.d(TAG, "Cannot find class: " + className);
-            return null;
-        }
-
-        if (!Searchable.class.isAssignableFrom(clazz)) {
-            return null;
-        }
-
-        try {
-            final Field f = clazz.getField(FIELD_NAME_SEARCH_INDEX_DATA_PROVIDER);
-            return (SearchIndexProvider) f.get(null);
-        } catch (NoSuchFieldException e) {
-            Log.e(TAG, "Cannot find field '" + FIELD_NAME_SEARCH_INDEX_DATA_PROVIDER + "'");
-        } catch (SecurityException se) {
-            Log.e(TAG,
-                    "Security exception for field '" + FIELD_NAME_SEARCH_INDEX_DATA_PROVIDER + "'");
-        } catch (IllegalAccessException e) {
-            Log.e(TAG, "Illegal access to field '" + FIELD_NAME_SEARCH_INDEX_DATA_PROVIDER + "'");
-        } catch (IllegalArgumentException e) {
-            Log.e(TAG, "Illegal argument when accessing field '"
-                    + FIELD_NAME_SEARCH_INDEX_DATA_PROVIDER + "'");
-        }
-        return null;
+    @Override
+    public void dump(FileDescriptor fd, PrintWriter writer, String[] args) {
+        // The provider lives as long as the process, so use it to expose the
+        // process-wide state through dumpsys
+        BackgroundExecutor.get().dump(writer);
+        TouchscreenGestureSettings.dumpLatencyStats(getContext(), writer);
     }
 }
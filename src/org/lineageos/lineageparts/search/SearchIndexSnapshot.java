@@ -0,0 +1,208 @@
+/*
+ * SPDX-FileCopyrightText: 2026 The LineageOS Project
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package org.lineageos.lineageparts.search;
+
+import android.content.Context;
+import android.util.ArrayMap;
+import android.util.AtomicFile;
+import android.util.Log;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Persisted copy of the raw search index rows of every part, keyed by a hash of everything
+ * the rows are computed from, so only the parts whose inputs changed have to be indexed again.
+ */
+class SearchIndexSnapshot {
+
+    private static final String TAG = SearchIndexSnapshot.class.getSimpleName();
+
+    private static final String FILE_NAME = "search_index_snapshot.json";
+
+    private static final String KEY_PARTS = "parts";
+    private static final String KEY_HASH = "hash";
+    private static final String KEY_ROWS = "rows";
+
+    private static class PartEntry {
+        final String mHash;
+        final List<Object[]> mRows;
+
+        PartEntry(String hash, List<Object[]> rows) {
+            mHash = hash;
+            mRows = rows;
+        }
+    }
+
+    private final AtomicFile mFile;
+    private final Map<String, PartEntry> mParts = new ArrayMap<>();
+    private boolean mDirty;
+    // Bumped on every change, so that an older copy never overwrites a newer one
+    private int mGeneration;
+    // Only accessed with mFile locked
+    private int mSavedGeneration;
+
+    SearchIndexSnapshot(Context context) {
+        mFile = new AtomicFile(new File(context.getFilesDir(), FILE_NAME));
+        load();
+    }
+
+    /**
+     * @return the cached rows of the part, or null if they were computed from other inputs
+     */
+    synchronized List<Object[]> getRows(String key, String hash) {
+        PartEntry entry = mParts.get(key);
+        return entry != null && entry.mHash.equals(hash) ? entry.mRows : null;
+    }
+
+    synchronized void putRows(String key, String hash, List<Object[]> rows) {
+        mParts.put(key, new PartEntry(hash, rows));
+        markDirtyLocked();
+    }
+
+    /**
+     * Drops the parts that are no longer indexed.
+     */
+    synchronized void retainAll(Set<String> keys) {
+        if (mParts.keySet().retainAll(keys)) {
+            markDirtyLocked();
+        }
+    }
+
+    private void markDirtyLocked() {
+        mDirty = true;
+        mGeneration++;
+    }
+
+    synchronized boolean isDirty() {
+        return mDirty;
+    }
+
+    /**
+     * Writes the snapshot if it changed. Only the serialization holds the snapshot lock, so
+     * the rows can still be read while the file is written.
+     */
+    void saveIfNeeded() {
+        final byte[] data;
+        final int generation;
+        synchronized (this) {
+            if (!mDirty) {
+                return;
+            }
+            try {
+                data = serializeLocked();
+            } catch (JSONException e) {
+                Log.e(TAG, "Failed to serialize the search index snapshot", e);
+                return;
+            }
+            generation = mGeneration;
+            mDirty = false;
+        }
+
+        synchronized (mFile) {
+            if (generation <= mSavedGeneration) {
+                // A newer copy was written in the meantime
+                return;
+            }
+            FileOutputStream fos = null;
+            try {
+                fos = mFile.startWrite();
+                fos.write(data);
+                mFile.finishWrite(fos);
+                mSavedGeneration = generation;
+            } catch (IOException e) {
+                Log.e(TAG, "Failed to save the search index snapshot", e);
+                mFile.failWrite(fos);
+                synchronized (this) {
+                    mDirty = true;
+                }
+            }
+        }
+    }
+
+    private byte[] serializeLocked() throws JSONException {
+        JSONObject parts = new JSONObject();
+        for (Map.Entry<String, PartEntry> part : mParts.entrySet()) {
+            JSONArray rows = new JSONArray();
+            for (Object[] row : part.getValue().mRows) {
+                JSONArray values = new JSONArray();
+                for (Object value : row) {
+                    values.put(value != null ? value : JSONObject.NULL);
+                }
+                rows.put(values);
+            }
+            parts.put(part.getKey(), new JSONObject()
+                    .put(KEY_HASH, part.getValue().mHash)
+                    .put(KEY_ROWS, rows));
+        }
+        return new JSONObject().put(KEY_PARTS, parts).toString()
+                .getBytes(StandardCharsets.UTF_8);
+    }
+
+    private void load() {
+        if (!mFile.exists()) {
+            return;
+        }
+
+        try (FileInputStream fis = mFile.openRead()) {
+            byte[] data = fis.readAllBytes();
+            JSONObject parts = new JSONObject(new String(data, StandardCharsets.UTF_8))
+                    .getJSONObject(KEY_PARTS);
+            Iterator<String> keys = parts.keys();
+            while (keys.hasNext()) {
+                String key = keys.next();
+                JSONObject part = parts.getJSONObject(key);
+                JSONArray rows = part.getJSONArray(KEY_ROWS);
+                List<Object[]> partRows = new ArrayList<>(rows.length());
+                for (int i = 0; i < rows.length(); i++) {
+                    JSONArray values = rows.getJSONArray(i);
+                    Object[] row = new Object[values.length()];
+                    for (int j = 0; j < row.length; j++) {
+                        row[j] = values.isNull(j) ? null : values.get(j);
+                    }
+                    partRows.add(row);
+                }
+                mParts.put(key, new PartEntry(part.getString(KEY_HASH),
+                        Collections.unmodifiableList(partRows)));
+            }
+        } catch (IOException | JSONException e) {
+            Log.w(TAG, "Discarding invalid search index snapshot", e);
+            mParts.clear();
+        }
+    }
+
+    static String hash(String... values) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            for (String value : values) {
+                digest.update(String.valueOf(value).getBytes(StandardCharsets.UTF_8));
+                // Separator, so adjacent values can't be confused
+                digest.update((byte) 0);
+            }
+            StringBuilder sb = new StringBuilder();
+            for (byte b : digest.digest()) {
+                sb.append(String.format("%02x", b));
+            }
+            return sb.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -27,5 +27,12 @@ public interface Searchable {
         List<SearchIndexableRaw> getRawDataToIndex(Context context);
 
         Set<String> getNonIndexableKeys(Context context);
+
+        /**
+         * Returns a version of the data returned by {@link #getRawDataToIndex(Context)},
+         * which must change whenever that data changes for reasons other than a system
+         * update or a locale change. Raw data is only recomputed when the version changes.
+         */
+        String getRawDataVersion(Context context);
     }
 }
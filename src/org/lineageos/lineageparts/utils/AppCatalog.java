@@ -0,0 +1,257 @@
+/*
+ * SPDX-FileCopyrightText: 2026 The LineageOS Project
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package org.lineageos.lineageparts.utils;
+
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.content.pm.ApplicationInfo;
+import android.content.pm.PackageManager;
+import android.content.pm.ResolveInfo;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.ArrayMap;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+
+/**
+ * Process-wide catalog of the apps which can be picked by the user: the launchable apps,
+ * plus a few system packages without launcher icons.
+ * <p>
+ * The catalog is loaded once in the background and then kept up to date with the package
+ * broadcasts, only reloading the packages which changed. Listeners get immutable sorted
+ * snapshots on the main thread, published in batches while the catalog loads. Icons are
+ * not part of the catalog, see {@link AppIconCache}.
+ */
+public final class AppCatalog {
+
+    private static final String TAG = AppCatalog.class.getSimpleName();
+
+    // Apps published at once while the catalog is loading
+    private static final int BATCH_SIZE = 32;
+
+    // Packages which don't have launcher icons, but which we want to show nevertheless
+    private static final List<String> PACKAGE_WHITELIST = Arrays.asList(
+        "android",                          /* system server */
+        "com.android.systemui",             /* system UI */
+        "com.android.providers.downloads"   /* download provider */
+    );
+
+    private static AppCatalog sInstance;
+
+    public static final class App implements Comparable<App> {
+        public final String packageName;
+        public final CharSequence title;
+        // Sorted labels of the launcher activities
+        public final List<CharSequence> activityTitles;
+
+        App(String packageName, CharSequence title, List<CharSequence> activityTitles) {
+            this.packageName = packageName;
+            this.title = title;
+            this.activityTitles = activityTitles;
+        }
+
+        @Override
+        public int compareTo(App another) {
+            int result = title.toString().compareToIgnoreCase(another.title.toString());
+            return result != 0 ? result : packageName.compareTo(another.packageName);
+        }
+    }
+
+    public interface Listener {
+        /**
+         * Called on the main thread with the sorted, immutable list of apps.
+         */
+        void onCatalogChanged(List<App> apps);
+    }
+
+    private final Context mContext;
+    private final PackageManager mPm;
+    private final Handler mHandler = new Handler(Looper.getMainLooper());
+    private final List<Listener> mListeners = new ArrayList<>();
+
+    // Only accessed on the main thread
+    private List<App> mApps = Collections.emptyList();
+    private final Map<String, App> mAppsByPackage = new ArrayMap<>();
+    private boolean mLoading;
+
+    private final BroadcastReceiver mPackageReceiver = new BroadcastReceiver() {
+        @Override
+        public void onReceive(Context context, Intent intent) {
+            if (intent.getData() == null) {
+                return;
+            }
+            final String packageName = intent.getData().getSchemeSpecificPart();
+            AppIconCache.get(context).invalidate(packageName);
+            BackgroundExecutor.get().execute(TAG, signal -> {
+                final App app = loadApp(packageName);
+                mHandler.post(() -> publish(Collections.singletonList(packageName),
+                        app != null ? Collections.singletonList(app) : Collections.emptyList()));
+            });
+        }
+    };
+
+    private AppCatalog(Context context) {
+        mContext = context;
+        mPm = context.getPackageManager();
+    }
+
+    public static synchronized AppCatalog get(Context context) {
+        if (sInstance == null) {
+            sInstance = new AppCatalog(context.getApplicationContext());
+        }
+        return sInstance;
+    }
+
+    /**
+     * Starts loading the catalog, if it isn't loaded already. Must be called on the main
+     * thread.
+     */
+    public void ensureLoaded() {
+        if (mLoading) {
+            return;
+        }
+        mLoading = true;
+
+        final IntentFilter filter = new IntentFilter();
+        filter.addAction(Intent.ACTION_PACKAGE_ADDED);
+        filter.addAction(Intent.ACTION_PACKAGE_CHANGED);
+        filter.addAction(Intent.ACTION_PACKAGE_REMOVED);
+        filter.addDataScheme("package");
+        mContext.registerReceiver(mPackageReceiver, filter);
+
+        BackgroundExecutor.get().execute(TAG, signal -> loadAll());
+    }
+
+    /**
+     * Adds a listener, which immediately gets the current apps. Must be called on the
+     * main thread.
+     */
+    public void addListener(Listener listener) {
+        ensureLoaded();
+        mListeners.add(listener);
+        listener.onCatalogChanged(mApps);
+    }
+
+    public void removeListener(Listener listener) {
+        mListeners.remove(listener);
+    }
+
+    public List<App> getApps() {
+        return mApps;
+    }
+
+    private void loadAll() {
+        final Intent mainIntent = new Intent(Intent.ACTION_MAIN, null);
+        mainIntent.addCategory(Intent.CATEGORY_LAUNCHER);
+        final List<ResolveInfo> installedAppsInfo = mPm.queryIntentActivities(mainIntent,
+                PackageManager.ResolveInfoFlags.of(0));
+
+        // Group the launcher activities by package
+        final Map<String, List<ResolveInfo>> activities = new ArrayMap<>();
+        for (ResolveInfo info : installedAppsInfo) {
+            final String packageName = info.activityInfo.packageName;
+            List<ResolveInfo> infos = activities.get(packageName);
+            if (infos == null) {
+                infos = new ArrayList<>();
+                activities.put(packageName, infos);
+            }
+            infos.add(info);
+        }
+
+        List<App> batch = new ArrayList<>(BATCH_SIZE);
+        for (Map.Entry<String, List<ResolveInfo>> entry : activities.entrySet()) {
+            batch.add(buildApp(entry.getValue().get(0).activityInfo.applicationInfo,
+                    entry.getValue()));
+            if (batch.size() == BATCH_SIZE) {
+                postBatch(batch);
+                batch = new ArrayList<>(BATCH_SIZE);
+            }
+        }
+
+        for (String packageName : PACKAGE_WHITELIST) {
+            if (activities.containsKey(packageName)) {
+                continue;
+            }
+            final App app = loadApp(packageName);
+            if (app != null) {
+                batch.add(app);
+            }
+        }
+        postBatch(batch);
+    }
+
+    private void postBatch(final List<App> batch) {
+        final List<String> packageNames = new ArrayList<>(batch.size());
+        for (App app : batch) {
+            packageNames.add(app.packageName);
+        }
+        mHandler.post(() -> publish(packageNames, batch));
+    }
+
+    /* returns the app of the package, or null if it can't be picked. */
+    private App loadApp(String packageName) {
+        final Intent mainIntent = new Intent(Intent.ACTION_MAIN, null);
+        mainIntent.addCategory(Intent.CATEGORY_LAUNCHER);
+        mainIntent.setPackage(packageName);
+        final List<ResolveInfo> infos = mPm.queryIntentActivities(mainIntent,
+                PackageManager.ResolveInfoFlags.of(0));
+        if (!infos.isEmpty()) {
+            return buildApp(infos.get(0).activityInfo.applicationInfo, infos);
+        }
+
+        if (PACKAGE_WHITELIST.contains(packageName)) {
+            try {
+                ApplicationInfo appInfo = mPm.getApplicationInfo(packageName,
+                        PackageManager.ApplicationInfoFlags.of(0));
+                return buildApp(appInfo, Collections.emptyList());
+            } catch (PackageManager.NameNotFoundException ignored) {
+                // package not present, so nothing to add -> ignore it
+            }
+        }
+        return null;
+    }
+
+    private App buildApp(ApplicationInfo appInfo, List<ResolveInfo> activities) {
+        final TreeSet<CharSequence> activityTitles = new TreeSet<>();
+        for (ResolveInfo info : activities) {
+            activityTitles.add(info.loadLabel(mPm));
+        }
+        return new App(appInfo.packageName, appInfo.loadLabel(mPm),
+                Collections.unmodifiableList(new ArrayList<>(activityTitles)));
+    }
+
+    /**
+     * Replaces the apps of the given packages, on the main thread.
+     */
+    private void publish(List<String> packageNames, List<App> apps) {
+        final ArrayList<App> newApps = new ArrayList<>(mApps);
+        for (String packageName : packageNames) {
+            final App old = mAppsByPackage.remove(packageName);
+            if (old != null) {
+                final int index = Collections.binarySearch(newApps, old);
+                if (index >= 0) {
+                    newApps.remove(index);
+                }
+            }
+        }
+        for (App app : apps) {
+            int index = Collections.binarySearch(newApps, app);
+            newApps.add(index < 0 ? -index - 1 : index, app);
+            mAppsByPackage.put(app.packageName, app);
+        }
+
+        mApps = Collections.unmodifiableList(newApps);
+        for (Listener listener : new ArrayList<>(mListeners)) {
+            listener.onCatalogChanged(mApps);
+        }
+    }
+}
@@ -0,0 +1,134 @@
+/*
+ * SPDX-FileCopyrightText: 2026 The LineageOS Project
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package org.lineageos.lineageparts.utils;
+
+import android.content.Context;
+import android.content.pm.PackageManager;
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.drawable.Drawable;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.ArrayMap;
+import android.util.LruCache;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Process-wide LRU cache of app icons, decoded on demand at the size they are shown at.
+ * <p>
+ * The cache is bounded by the bytes of the decoded bitmaps rather than by the number of
+ * apps, so its footprint follows what lists actually show. Icons are decoded on the
+ * background pool and delivered on the main thread; concurrent requests for the same
+ * icon share one decode.
+ */
+public final class AppIconCache {
+
+    private static final String TAG = AppIconCache.class.getSimpleName();
+
+    // Share of the heap the decoded icons may use
+    private static final int HEAP_FRACTION = 64;
+
+    private static AppIconCache sInstance;
+
+    public interface Callback {
+        /**
+         * Called on the main thread, with a null icon if the package isn't installed.
+         */
+        void onIconLoaded(String packageName, Bitmap icon);
+    }
+
+    private final PackageManager mPm;
+    private final Handler mHandler = new Handler(Looper.getMainLooper());
+    private final LruCache<String, Bitmap> mCache;
+
+    // Icons being decoded, with the callbacks waiting for them. Only accessed on the main thread
+    private final Map<String, List<Callback>> mPending = new ArrayMap<>();
+
+    private AppIconCache(Context context) {
+        mPm = context.getPackageManager();
+        mCache = new LruCache<>((int) (Runtime.getRuntime().maxMemory() / HEAP_FRACTION)) {
+            @Override
+            protected int sizeOf(String key, Bitmap value) {
+                return value.getAllocationByteCount();
+            }
+        };
+    }
+
+    public static synchronized AppIconCache get(Context context) {
+        if (sInstance == null) {
+            sInstance = new AppIconCache(context.getApplicationContext());
+        }
+        return sInstance;
+    }
+
+    private static String getKey(String packageName, int sizePx) {
+        return sizePx + ":" + packageName;
+    }
+
+    public Bitmap getCached(String packageName, int sizePx) {
+        return mCache.get(getKey(packageName, sizePx));
+    }
+
+    /**
+     * Decodes the icon of the package at the given size in the background. Must be called
+     * on the main thread.
+     *
+     * @param callback the callback, or null to only warm the cache
+     */
+    public void load(String packageName, int sizePx, Callback callback) {
+        final String key = getKey(packageName, sizePx);
+        List<Callback> callbacks = mPending.get(key);
+        if (callbacks == null) {
+            callbacks = new ArrayList<>();
+            mPending.put(key, callbacks);
+            BackgroundExecutor.get().execute(TAG, signal -> {
+                final Bitmap icon = decode(packageName, sizePx);
+                mHandler.post(() -> {
+                    if (icon != null) {
+                        mCache.put(key, icon);
+                    }
+                    final List<Callback> waiting = mPending.remove(key);
+                    if (waiting != null) {
+                        for (Callback cb : waiting) {
+                            cb.onIconLoaded(packageName, icon);
+                        }
+                    }
+                });
+            });
+        }
+        if (callback != null) {
+            callbacks.add(callback);
+        }
+    }
+
+    /**
+     * Drops the icons of the package, e.g. because it was updated.
+     */
+    public void invalidate(String packageName) {
+        final String suffix = ":" + packageName;
+        for (String key : mCache.snapshot().keySet()) {
+            if (key.endsWith(suffix)) {
+                mCache.remove(key);
+            }
+        }
+    }
+
+    private Bitmap decode(String packageName, int sizePx) {
+        final Drawable drawable;
+        try {
+            drawable = mPm.getApplicationIcon(packageName);
+        } catch (PackageManager.NameNotFoundException e) {
+            return null;
+        }
+        // Rasterize at the target size, so only a bitmap of the row size is kept
+        final Bitmap icon = Bitmap.createBitmap(sizePx, sizePx, Bitmap.Config.ARGB_8888);
+        drawable.setBounds(0, 0, sizePx, sizePx);
+        drawable.draw(new Canvas(icon));
+        return icon;
+    }
+}
@@ -0,0 +1,129 @@
+/*
+ * SPDX-FileCopyrightText: 2026 The LineageOS Project
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package org.lineageos.lineageparts.utils;
+
+import android.content.Context;
+import android.content.pm.ApplicationInfo;
+import android.content.pm.PackageInfo;
+import android.content.pm.PackageManager;
+import android.graphics.drawable.Drawable;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.LruCache;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Process-wide LRU cache of app labels and icons.
+ * <p>
+ * Entries are loaded on the background pool and are only valid for the version of the
+ * package they were loaded from: a cached entry is reused as long as the lastUpdateTime
+ * of the package didn't change, and loaded again otherwise.
+ */
+public final class AppInfoCache {
+
+    private static final String TAG = AppInfoCache.class.getSimpleName();
+
+    private static final int MAX_ENTRIES = 256;
+
+    private static AppInfoCache sInstance;
+
+    public static final class AppInfo {
+        public final String packageName;
+        public final CharSequence label;
+        private final Drawable mIcon;
+        private final long mLastUpdateTime;
+
+        AppInfo(String packageName, CharSequence label, Drawable icon, long lastUpdateTime) {
+            this.packageName = packageName;
+            this.label = label;
+            mIcon = icon;
+            mLastUpdateTime = lastUpdateTime;
+        }
+
+        /**
+         * @return a new drawable of the icon, which shares the bitmap of the cached one but
+         *         can be attached to its own view
+         */
+        public Drawable newIcon() {
+            final Drawable.ConstantState state = mIcon.getConstantState();
+            return state != null ? state.newDrawable() : mIcon;
+        }
+    }
+
+    public interface Callback {
+        /**
+         * Called on the main thread, with a null info if the package isn't installed.
+         */
+        void onAppInfoLoaded(String packageName, AppInfo info);
+    }
+
+    private final PackageManager mPm;
+    private final Handler mHandler = new Handler(Looper.getMainLooper());
+    private final LruCache<String, AppInfo> mCache = new LruCache<>(MAX_ENTRIES);
+
+    private AppInfoCache(Context context) {
+        mPm = context.getPackageManager();
+    }
+
+    public static synchronized AppInfoCache get(Context context) {
+        if (sInstance == null) {
+            sInstance = new AppInfoCache(context.getApplicationContext());
+        }
+        return sInstance;
+    }
+
+    /**
+     * @return the cached info of the package, which may belong to an older version of it
+     */
+    public AppInfo getCached(String packageName) {
+        return mCache.get(packageName);
+    }
+
+    /**
+     * Loads the info of the packages in the background, calling back once per package.
+     */
+    public void load(Collection<String> packageNames, Callback callback) {
+        final List<String> packages = new ArrayList<>(packageNames);
+        BackgroundExecutor.get().execute(TAG, signal -> {
+            for (String packageName : packages) {
+                if (signal.isCanceled()) {
+                    return;
+                }
+                final AppInfo info = loadBlocking(packageName);
+                mHandler.post(() -> callback.onAppInfoLoaded(packageName, info));
+            }
+        });
+    }
+
+    /**
+     * Loads the info of the package on the calling thread, from the cache if still valid.
+     */
+    public AppInfo loadBlocking(String packageName) {
+        final PackageInfo pi;
+        try {
+            pi = mPm.getPackageInfo(packageName, PackageManager.PackageInfoFlags.of(0));
+        } catch (PackageManager.NameNotFoundException e) {
+            mCache.remove(packageName);
+            return null;
+        }
+        return loadBlocking(pi.applicationInfo, pi.lastUpdateTime);
+    }
+
+    /**
+     * Loads the info of an application whose lastUpdateTime is already known.
+     */
+    public AppInfo loadBlocking(ApplicationInfo appInfo, long lastUpdateTime) {
+        AppInfo info = mCache.get(appInfo.packageName);
+        if (info == null || info.mLastUpdateTime != lastUpdateTime) {
+            info = new AppInfo(appInfo.packageName, appInfo.loadLabel(mPm),
+                    appInfo.loadIcon(mPm), lastUpdateTime);
+            mCache.put(appInfo.packageName, info);
+        }
+        return info;
+    }
+}
@@ -0,0 +1,179 @@
+/*
+ * SPDX-FileCopyrightText: 2026 The LineageOS Project
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package org.lineageos.lineageparts.utils;
+
+import android.os.CancellationSignal;
+import android.os.Process;
+import android.os.SystemClock;
+import android.util.ArrayMap;
+import android.util.Log;
+
+import java.io.PrintWriter;
+import java.util.Map;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Process-wide pool of background threads shared by every part.
+ *
+ * Tasks receive a {@link CancellationSignal} that they are expected to check between their
+ * steps. Tasks executed with a key supersede the in-flight task submitted with the same key,
+ * which is cancelled. Queue depth and per-task latency counters can be dumped with
+ * {@link #dump(PrintWriter)}.
+ */
+public final class BackgroundExecutor {
+
+    private static final String TAG = BackgroundExecutor.class.getSimpleName();
+
+    private static final int MAX_THREADS =
+            Math.max(2, Math.min(4, Runtime.getRuntime().availableProcessors()));
+    private static final long KEEP_ALIVE_SECONDS = 30;
+
+    private static BackgroundExecutor sInstance;
+
+    public interface Task {
+        void run(CancellationSignal signal) throws Exception;
+    }
+
+    private static class TaskStats {
+        int mExecuted;
+        int mCancelled;
+        int mFailed;
+        long mTotalWaitMs;
+        long mMaxWaitMs;
+        long mTotalRunMs;
+        long mMaxRunMs;
+    }
+
+    private final ThreadPoolExecutor mExecutor;
+    private final Map<String, CancellationSignal> mExclusiveTasks = new ArrayMap<>();
+    private final Map<String, TaskStats> mStats = new ArrayMap<>();
+    private int mMaxQueueDepth;
+
+    private BackgroundExecutor() {
+        final AtomicInteger threadCount = new AtomicInteger();
+        mExecutor = new ThreadPoolExecutor(MAX_THREADS, MAX_THREADS,
+                KEEP_ALIVE_SECONDS, TimeUnit.SECONDS, new LinkedBlockingQueue<>(),
+                r -> {
+                    Thread thread = new Thread(() -> {
+                        Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                        r.run();
+                    }, "LineageParts-bg-" + threadCount.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                });
+        mExecutor.allowCoreThreadTimeOut(true);
+    }
+
+    public static synchronized BackgroundExecutor get() {
+        if (sInstance == null) {
+            sInstance = new BackgroundExecutor();
+        }
+        return sInstance;
+    }
+
+    /**
+     * Executes the task in the background.
+     *
+     * @param name name of the task, used to group the latency counters
+     * @return the signal to cancel the task
+     */
+    public CancellationSignal execute(String name, Task task) {
+        return submit(name, null, task);
+    }
+
+    /**
+     * Executes the task in the background, cancelling the previous task executed with the same
+     * key if it hasn't finished yet.
+     *
+     * @param key key identifying the task, also used to group the latency counters
+     * @return the signal to cancel the task
+     */
+    public CancellationSignal executeExclusive(String key, Task task) {
+        return submit(key, key, task);
+    }
+
+    private CancellationSignal submit(final String name, final String key, final Task task) {
+        final CancellationSignal signal = new CancellationSignal();
+        final long enqueueTime = SystemClock.elapsedRealtime();
+
+        synchronized (this) {
+            if (key != null) {
+                CancellationSignal previous = mExclusiveTasks.put(key, signal);
+                if (previous != null) {
+                    previous.cancel();
+                }
+            }
+        }
+
+        mExecutor.execute(() -> {
+            final long startTime = SystemClock.elapsedRealtime();
+            boolean failed = false;
+            try {
+                if (!signal.isCanceled()) {
+                    task.run(signal);
+                }
+            } catch (Exception ex) {
+                failed = true;
+                Log.e(TAG, "Task " + name + " failed", ex);
+            } finally {
+                final long endTime = SystemClock.elapsedRealtime();
+                synchronized (this) {
+                    if (key != null && mExclusiveTasks.get(key) == signal) {
+                        mExclusiveTasks.remove(key);
+                    }
+                    recordLocked(name, startTime - enqueueTime, endTime - startTime,
+                            signal.isCanceled(), failed);
+                }
+            }
+        });
+
+        synchronized (this) {
+            mMaxQueueDepth = Math.max(mMaxQueueDepth, mExecutor.getQueue().size());
+        }
+        return signal;
+    }
+
+    private void recordLocked(String name, long waitMs, long runMs, boolean cancelled,
+            boolean failed) {
+        TaskStats stats = mStats.get(name);
+        if (stats == null) {
+            stats = new TaskStats();
+            mStats.put(name, stats);
+        }
+        stats.mExecuted++;
+        if (cancelled) {
+            stats.mCancelled++;
+        }
+        if (failed) {
+            stats.mFailed++;
+        }
+        stats.mTotalWaitMs += waitMs;
+        stats.mMaxWaitMs = Math.max(stats.mMaxWaitMs, waitMs);
+        stats.mTotalRunMs += runMs;
+        stats.mMaxRunMs = Math.max(stats.mMaxRunMs, runMs);
+    }
+
+    public synchronized void dump(PrintWriter pw) {
+        pw.println("BackgroundExecutor:");
+        pw.println("  threads=" + mExecutor.getPoolSize() + "/" + MAX_THREADS
+                + " active=" + mExecutor.getActiveCount()
+                + " queued=" + mExecutor.getQueue().size()
+                + " maxQueued=" + mMaxQueueDepth
+                + " completed=" + mExecutor.getCompletedTaskCount());
+        for (Map.Entry<String, TaskStats> entry : mStats.entrySet()) {
+            final TaskStats stats = entry.getValue();
+            pw.println("  " + entry.getKey() + ": executed=" + stats.mExecuted
+                    + " cancelled=" + stats.mCancelled
+                    + " failed=" + stats.mFailed
+                    + " avgWaitMs=" + (stats.mTotalWaitMs / stats.mExecuted)
+                    + " maxWaitMs=" + stats.mMaxWaitMs
+                    + " avgRunMs=" + (stats.mTotalRunMs / stats.mExecuted)
+                    + " maxRunMs=" + stats.mMaxRunMs);
+        }
+    }
+}
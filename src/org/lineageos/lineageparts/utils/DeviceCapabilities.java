@@ -0,0 +1,245 @@
+/*
+ * SPDX-FileCopyrightText: 2026 The LineageOS Project
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package org.lineageos.lineageparts.utils;
+
+import static org.lineageos.internal.util.DeviceKeysConstants.*;
+
+import android.bluetooth.BluetoothManager;
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.content.pm.PackageManager;
+import android.hardware.camera2.CameraAccessException;
+import android.hardware.camera2.CameraCharacteristics;
+import android.hardware.camera2.CameraManager;
+import android.nfc.NfcAdapter;
+import android.os.Build;
+import android.os.SystemProperties;
+import android.provider.Settings;
+import android.telephony.TelephonyManager;
+import android.text.TextUtils;
+import android.util.Log;
+import android.view.KeyCharacterMap;
+import android.view.KeyEvent;
+
+/**
+ * Immutable snapshot of the hardware capabilities of the device.
+ * <p>
+ * Besides system updates, these can only change with overlays or properties, which take
+ * effect on reboot. The snapshot is thus computed once per boot, persisted along with the
+ * build fingerprint and the boot count, and shared by the whole process. This keeps
+ * resource lookups and binder calls (input, camera, NFC, Bluetooth, telephony) out of
+ * fragment creation and search indexing.
+ */
+public final class DeviceCapabilities {
+
+    private static final String TAG = DeviceCapabilities.class.getSimpleName();
+
+    private static final String PREFS_NAME = "device_capabilities";
+    private static final String KEY_SNAPSHOT_ID = "snapshot_id";
+    private static final String KEY_DEVICE_KEYS = "device_keys";
+    private static final String KEY_DEVICE_WAKE_KEYS = "device_wake_keys";
+    private static final String KEY_POWER_KEY = "power_key";
+    private static final String KEY_BUTTON_BRIGHTNESS = "button_brightness";
+    private static final String KEY_KEYBOARD_BRIGHTNESS = "keyboard_brightness";
+    private static final String KEY_FLASHLIGHT = "flashlight";
+    private static final String KEY_NFC = "nfc";
+    private static final String KEY_BLUETOOTH = "bluetooth";
+    private static final String KEY_MOBILE_DATA = "mobile_data";
+    private static final String KEY_DOZE = "doze";
+
+    private static DeviceCapabilities sInstance;
+
+    private final int mDeviceKeys;
+    private final int mDeviceWakeKeys;
+    private final boolean mHasPowerKey;
+    private final boolean mButtonBrightnessControl;
+    private final boolean mKeyboardBrightnessControl;
+    private final boolean mFlashLight;
+    private final boolean mNfc;
+    private final boolean mBluetooth;
+    private final boolean mMobileData;
+    private final boolean mDoze;
+
+    private DeviceCapabilities(SharedPreferences prefs) {
+        mDeviceKeys = prefs.getInt(KEY_DEVICE_KEYS, 0);
+        mDeviceWakeKeys = prefs.getInt(KEY_DEVICE_WAKE_KEYS, 0);
+        mHasPowerKey = prefs.getBoolean(KEY_POWER_KEY, false);
+        mButtonBrightnessControl = prefs.getBoolean(KEY_BUTTON_BRIGHTNESS, false);
+        mKeyboardBrightnessControl = prefs.getBoolean(KEY_KEYBOARD_BRIGHTNESS, false);
+        mFlashLight = prefs.getBoolean(KEY_FLASHLIGHT, false);
+        mNfc = prefs.getBoolean(KEY_NFC, false);
+        mBluetooth = prefs.getBoolean(KEY_BLUETOOTH, false);
+        mMobileData = prefs.getBoolean(KEY_MOBILE_DATA, false);
+        mDoze = prefs.getBoolean(KEY_DOZE, false);
+    }
+
+    private DeviceCapabilities(Context context, Boolean flashLight, Boolean nfc) {
+        mDeviceKeys = context.getResources().getInteger(
+                org.lineageos.platform.internal.R.integer.config_deviceHardwareKeys);
+        mDeviceWakeKeys = context.getResources().getInteger(
+                org.lineageos.platform.internal.R.integer.config_deviceHardwareWakeKeys);
+        mHasPowerKey = KeyCharacterMap.deviceHasKey(KeyEvent.KEYCODE_POWER);
+        mButtonBrightnessControl = context.getResources().getInteger(
+                org.lineageos.platform.internal.R.integer
+                        .config_deviceSupportsButtonBrightnessControl) != 0;
+        mKeyboardBrightnessControl = context.getResources().getInteger(
+                org.lineageos.platform.internal.R.integer
+                        .config_deviceSupportsKeyboardBrightnessControl) != 0;
+        mFlashLight = flashLight != null && flashLight;
+        mNfc = nfc != null && nfc;
+        final BluetoothManager bluetoothManager = context.getSystemService(BluetoothManager.class);
+        mBluetooth = bluetoothManager != null && bluetoothManager.getAdapter() != null;
+        mMobileData = context.getSystemService(TelephonyManager.class).isDataCapable();
+        mDoze = computeDozeAvailable(context);
+    }
+
+    public static synchronized DeviceCapabilities get(Context context) {
+        if (sInstance == null) {
+            sInstance = load(context.getApplicationContext());
+        }
+        return sInstance;
+    }
+
+    private static DeviceCapabilities load(Context context) {
+        final SharedPreferences prefs =
+                context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+        final String snapshotId = getSnapshotId(context);
+        if (snapshotId.equals(prefs.getString(KEY_SNAPSHOT_ID, null))) {
+            return new DeviceCapabilities(prefs);
+        }
+
+        final Boolean flashLight = computeFlashLight(context);
+        final Boolean nfc = computeNfc(context);
+        final DeviceCapabilities caps = new DeviceCapabilities(context, flashLight, nfc);
+        // The camera and NFC services may not be up yet early after boot, in which case the
+        // snapshot is only kept for this process and computed again by the next one
+        if (flashLight != null && nfc != null) {
+            caps.save(prefs, snapshotId);
+        }
+        return caps;
+    }
+
+    /* returns what the snapshot was computed for, it is computed again once it changes. */
+    private static String getSnapshotId(Context context) {
+        final int bootCount = Settings.Global.getInt(context.getContentResolver(),
+                Settings.Global.BOOT_COUNT, -1);
+        // Runtime override of the doze component, see computeDozeAvailable()
+        final String dozeComponent = Build.IS_DEBUGGABLE
+                ? SystemProperties.get("debug.doze.component") : "";
+        return Build.FINGERPRINT + "|" + bootCount + "|" + dozeComponent;
+    }
+
+    private void save(SharedPreferences prefs, String snapshotId) {
+        prefs.edit()
+                .putString(KEY_SNAPSHOT_ID, snapshotId)
+                .putInt(KEY_DEVICE_KEYS, mDeviceKeys)
+                .putInt(KEY_DEVICE_WAKE_KEYS, mDeviceWakeKeys)
+                .putBoolean(KEY_POWER_KEY, mHasPowerKey)
+                .putBoolean(KEY_BUTTON_BRIGHTNESS, mButtonBrightnessControl)
+                .putBoolean(KEY_KEYBOARD_BRIGHTNESS, mKeyboardBrightnessControl)
+                .putBoolean(KEY_FLASHLIGHT, mFlashLight)
+                .putBoolean(KEY_NFC, mNfc)
+                .putBoolean(KEY_BLUETOOTH, mBluetooth)
+                .putBoolean(KEY_MOBILE_DATA, mMobileData)
+                .putBoolean(KEY_DOZE, mDoze)
+                .apply();
+    }
+
+    /* returns whether a back facing flash is available, or null if it can't be determined. */
+    private static Boolean computeFlashLight(Context context) {
+        CameraManager cameraManager = context.getSystemService(CameraManager.class);
+        try {
+            String[] ids = cameraManager.getCameraIdList();
+            for (String id : ids) {
+                CameraCharacteristics c = cameraManager.getCameraCharacteristics(id);
+                Boolean flashAvailable = c.get(CameraCharacteristics.FLASH_INFO_AVAILABLE);
+                Integer lensFacing = c.get(CameraCharacteristics.LENS_FACING);
+                if (flashAvailable != null
+                        && flashAvailable
+                        && lensFacing != null
+                        && lensFacing == CameraCharacteristics.LENS_FACING_BACK) {
+                    return true;
+                }
+            }
+        } catch (CameraAccessException | AssertionError e) {
+            Log.w(TAG, "Unable to query the cameras", e);
+            return null;
+        }
+        return false;
+    }
+
+    /* returns whether NFC is available, or null if it can't be determined. */
+    private static Boolean computeNfc(Context context) {
+        if (!context.getPackageManager().hasSystemFeature(PackageManager.FEATURE_NFC)) {
+            return false;
+        }
+        if (NfcAdapter.getDefaultAdapter(context) == null) {
+            // The feature is declared, so the service just isn't up yet
+            return null;
+        }
+        return true;
+    }
+
+    private static boolean computeDozeAvailable(Context context) {
+        String name = Build.IS_DEBUGGABLE ? SystemProperties.get("debug.doze.component") : null;
+        if (TextUtils.isEmpty(name)) {
+            name = context.getResources().getString(
+                    com.android.internal.R.string.config_dozeComponent);
+        }
+        return !TextUtils.isEmpty(name);
+    }
+
+    public int getDeviceKeys() {
+        return mDeviceKeys;
+    }
+
+    public int getDeviceWakeKeys() {
+        return mDeviceWakeKeys;
+    }
+
+    public boolean hasPowerKey() {
+        return mHasPowerKey;
+    }
+
+    /* returns whether the device has any of the keys of the given KEY_MASK_* mask or not. */
+    public boolean hasKeys(int mask) {
+        return (mDeviceKeys & mask) != 0;
+    }
+
+    /* returns whether the device can be waken using the keys of the given mask or not. */
+    public boolean canWakeUsingKeys(int mask) {
+        return (mDeviceWakeKeys & mask) != 0;
+    }
+
+    public boolean hasButtonBacklightSupport() {
+        // All hardware keys besides volume and camera can possibly have a backlight
+        return mButtonBrightnessControl && hasKeys(KEY_MASK_HOME | KEY_MASK_BACK
+                | KEY_MASK_MENU | KEY_MASK_ASSIST | KEY_MASK_APP_SWITCH);
+    }
+
+    public boolean hasKeyboardBacklightSupport() {
+        return mKeyboardBrightnessControl;
+    }
+
+    public boolean supportsFlashLight() {
+        return mFlashLight;
+    }
+
+    public boolean supportsNfc() {
+        return mNfc;
+    }
+
+    public boolean supportsBluetooth() {
+        return mBluetooth;
+    }
+
+    public boolean supportsMobileData() {
+        return mMobileData;
+    }
+
+    public boolean isDozeAvailable() {
+        return mDoze;
+    }
+}
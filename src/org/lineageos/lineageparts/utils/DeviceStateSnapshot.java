@@ -0,0 +1,257 @@
+/*
+ * SPDX-FileCopyrightText: 2026 The LineageOS Project
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package org.lineageos.lineageparts.utils;
+
+import android.bluetooth.BluetoothManager;
+import android.content.ContentResolver;
+import android.content.Context;
+import android.location.LocationManager;
+import android.media.AudioManager;
+import android.net.wifi.WifiManager;
+import android.nfc.NfcManager;
+import android.os.Process;
+import android.os.SystemClock;
+import android.provider.Settings;
+import android.util.Log;
+import android.util.SparseIntArray;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Immutable snapshot of the current radio and audio state of the device.
+ * <p>
+ * Every source is read in parallel on a small pool of its own, so that a slow service
+ * can neither hold up the other sources nor the {@link BackgroundExecutor} tasks: sources
+ * which don't answer in time are left out of the snapshot, reported as null, and the
+ * snapshot isn't {@link #isComplete() complete}. Complete snapshots are reused for a
+ * short while.
+ */
+public final class DeviceStateSnapshot {
+
+    private static final String TAG = DeviceStateSnapshot.class.getSimpleName();
+
+    // Sources which didn't answer within this time are left out
+    private static final long SOURCE_TIMEOUT_MS = 1000;
+    // Complete snapshots younger than this are reused
+    private static final long MAX_AGE_MS = 3000;
+    private static final long KEEP_ALIVE_SECONDS = 30;
+
+    private static final int SOURCE_BLUETOOTH = 0;
+    private static final int SOURCE_LOCATION = 1;
+    private static final int SOURCE_WIFI = 2;
+    private static final int SOURCE_WIFI_AP = 3;
+    private static final int SOURCE_SYNC = 4;
+    private static final int SOURCE_MOBILE_DATA = 5;
+    private static final int SOURCE_NFC = 6;
+    private static final int SOURCE_AIRPLANE_MODE = 7;
+    private static final int SOURCE_AUDIO = 8;
+    private static final int SOURCE_COUNT = 9;
+
+    private static final int[] STREAMS = {
+        AudioManager.STREAM_ALARM,
+        AudioManager.STREAM_MUSIC,
+        AudioManager.STREAM_RING,
+        AudioManager.STREAM_NOTIFICATION
+    };
+
+    private static DeviceStateSnapshot sCached;
+    private static ThreadPoolExecutor sExecutor;
+
+    private static class AudioState {
+        final int mRingerMode;
+        final SparseIntArray mStreamVolumes = new SparseIntArray(STREAMS.length);
+
+        AudioState(AudioManager am) {
+            mRingerMode = am.getRingerMode();
+            for (int stream : STREAMS) {
+                mStreamVolumes.put(stream, am.getStreamVolume(stream));
+            }
+        }
+    }
+
+    private final long mTime;
+    private final Object[] mValues;
+    private final boolean mComplete;
+
+    private DeviceStateSnapshot(Object[] values, boolean complete) {
+        mTime = SystemClock.elapsedRealtime();
+        mValues = values;
+        mComplete = complete;
+    }
+
+    private static synchronized ThreadPoolExecutor getExecutor() {
+        if (sExecutor == null) {
+            // One thread per source, so the sources don't wait for each other
+            final AtomicInteger threadCount = new AtomicInteger();
+            sExecutor = new ThreadPoolExecutor(SOURCE_COUNT, SOURCE_COUNT,
+                    KEEP_ALIVE_SECONDS, TimeUnit.SECONDS, new LinkedBlockingQueue<>(),
+                    r -> {
+                        Thread thread = new Thread(() -> {
+                            Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                            r.run();
+                        }, "LineageParts-state-" + threadCount.incrementAndGet());
+                        thread.setDaemon(true);
+                        return thread;
+                    });
+            sExecutor.allowCoreThreadTimeOut(true);
+        }
+        return sExecutor;
+    }
+
+    /**
+     * Reads the current state of the device, blocking for at most about
+     * {@link #SOURCE_TIMEOUT_MS}. Must not be called on the main thread.
+     */
+    public static DeviceStateSnapshot capture(Context context) {
+        synchronized (DeviceStateSnapshot.class) {
+            if (sCached != null
+                    && SystemClock.elapsedRealtime() - sCached.mTime < MAX_AGE_MS) {
+                return sCached;
+            }
+        }
+
+        final Context appContext = context.getApplicationContext();
+        final List<Callable<Object>> tasks = new ArrayList<>(SOURCE_COUNT);
+        for (int i = 0; i < SOURCE_COUNT; i++) {
+            final int source = i;
+            tasks.add(() -> readSource(appContext, source));
+        }
+
+        final Object[] values = new Object[SOURCE_COUNT];
+        int timedOut = 0;
+        try {
+            // Sources which didn't answer by the deadline are cancelled
+            final List<Future<Object>> results = getExecutor().invokeAll(tasks,
+                    SOURCE_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+            for (int i = 0; i < SOURCE_COUNT; i++) {
+                try {
+                    values[i] = results.get(i).get();
+                } catch (CancellationException e) {
+                    timedOut++;
+                } catch (ExecutionException e) {
+                    // An unsupported source, rather than a slow one
+                    Log.w(TAG, "Unable to read source " + i, e.getCause());
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            timedOut = SOURCE_COUNT;
+        }
+
+        final DeviceStateSnapshot snapshot = new DeviceStateSnapshot(values, timedOut == 0);
+        if (snapshot.mComplete) {
+            synchronized (DeviceStateSnapshot.class) {
+                sCached = snapshot;
+            }
+        } else {
+            Log.w(TAG, timedOut + " sources timed out");
+        }
+        return snapshot;
+    }
+
+    /* returns the value of the source, or null if the device doesn't support it. */
+    private static Object readSource(Context context, int source) {
+        switch (source) {
+            case SOURCE_BLUETOOTH:
+                if (!DeviceUtils.deviceSupportsBluetooth(context)) {
+                    return null;
+                }
+                return context.getSystemService(BluetoothManager.class).getAdapter().isEnabled();
+            case SOURCE_LOCATION:
+                return context.getSystemService(LocationManager.class).isLocationEnabled();
+            case SOURCE_WIFI:
+                return context.getSystemService(WifiManager.class).isWifiEnabled();
+            case SOURCE_WIFI_AP:
+                return context.getSystemService(WifiManager.class).isWifiApEnabled();
+            case SOURCE_SYNC:
+                return ContentResolver.getMasterSyncAutomatically();
+            case SOURCE_MOBILE_DATA:
+                if (!DeviceUtils.deviceSupportsMobileData(context)) {
+                    return null;
+                }
+                return DeviceUtils.isMobileDataEnabled(context);
+            case SOURCE_NFC:
+                if (!DeviceUtils.deviceSupportsNfc(context)) {
+                    return null;
+                }
+                return context.getSystemService(NfcManager.class).getDefaultAdapter().isEnabled();
+            case SOURCE_AIRPLANE_MODE:
+                return Settings.Global.getInt(context.getContentResolver(),
+                        Settings.Global.AIRPLANE_MODE_ON, 0) != 0;
+            case SOURCE_AUDIO:
+                return new AudioState(context.getSystemService(AudioManager.class));
+            default:
+                throw new IllegalArgumentException("Unknown source " + source);
+        }
+    }
+
+    private Boolean getBoolean(int source) {
+        return (Boolean) mValues[source];
+    }
+
+    /* returns whether every source answered in time. */
+    public boolean isComplete() {
+        return mComplete;
+    }
+
+    /* The getters return null if the state is unsupported or wasn't read in time. */
+
+    public Boolean isBluetoothEnabled() {
+        return getBoolean(SOURCE_BLUETOOTH);
+    }
+
+    public Boolean isLocationEnabled() {
+        return getBoolean(SOURCE_LOCATION);
+    }
+
+    public Boolean isWifiEnabled() {
+        return getBoolean(SOURCE_WIFI);
+    }
+
+    public Boolean isWifiApEnabled() {
+        return getBoolean(SOURCE_WIFI_AP);
+    }
+
+    public Boolean isSyncEnabled() {
+        return getBoolean(SOURCE_SYNC);
+    }
+
+    public Boolean isMobileDataEnabled() {
+        return getBoolean(SOURCE_MOBILE_DATA);
+    }
+
+    public Boolean isNfcEnabled() {
+        return getBoolean(SOURCE_NFC);
+    }
+
+    public Boolean isAirplaneModeEnabled() {
+        return getBoolean(SOURCE_AIRPLANE_MODE);
+    }
+
+    public Integer getRingerMode() {
+        final AudioState audio = (AudioState) mValues[SOURCE_AUDIO];
+        return audio != null ? audio.mRingerMode : null;
+    }
+
+    /**
+     * @param stream one of the alarm, music, ring or notification streams
+     */
+    public Integer getStreamVolume(int stream) {
+        final AudioState audio = (AudioState) mValues[SOURCE_AUDIO];
+        if (audio == null || audio.mStreamVolumes.indexOfKey(stream) < 0) {
+            return null;
+        }
+        return audio.mStreamVolumes.get(stream);
+    }
+}
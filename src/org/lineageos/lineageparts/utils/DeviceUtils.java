@@ -9,7 +9,6 @@ import static android.view.WindowManagerPolicyConstants.NAV_BAR_MODE_2BUTTON;
 import static android.view.WindowManagerPolicyConstants.NAV_BAR_MODE_GESTURAL;
 
 import android.app.Activity;
-import android.bluetooth.BluetoothManager;
 import android.content.Context;
 import android.content.pm.ActivityInfo;
 import android.content.pm.PackageInfo;
@@ -17,19 +16,10 @@ import android.content.pm.PackageManager;
 import android.content.res.Configuration;
 import android.graphics.Point;
 import android.graphics.Rect;
-import android.hardware.camera2.CameraAccessException;
-import android.hardware.camera2.CameraCharacteristics;
-import android.hardware.camera2.CameraManager;
-import android.nfc.NfcAdapter;
-import android.os.Build;
-import android.os.SystemProperties;
 import android.telephony.TelephonyManager;
 import android.telephony.SubscriptionManager;
-import android.text.TextUtils;
 import android.view.Display;
 import android.view.DisplayCutout;
-import android.view.KeyCharacterMap;
-import android.view.KeyEvent;
 import android.view.Surface;
 
 import static org.lineageos.internal.util.DeviceKeysConstants.*;
@@ -40,6 +30,7 @@ public class DeviceUtils {
 
     /* returns whether the device has a centered display cutout or not. */
     public static boolean hasCenteredCutout(Context context) {
+        // Depends on the current rotation, so this isn't part of the DeviceCapabilities
         Display display = context.getDisplay();
         DisplayCutout cutout = display.getCutout();
         if (cutout != null) {
@@ -69,106 +60,96 @@ public class DeviceUtils {
     }
 
     public static int getDeviceKeys(Context context) {
-        return context.getResources().getInteger(
-                org.lineageos.platform.internal.R.integer.config_deviceHardwareKeys);
+        return DeviceCapabilities.get(context).getDeviceKeys();
     }
 
     public static int getDeviceWakeKeys(Context context) {
-        return context.getResources().getInteger(
-                org.lineageos.platform.internal.R.integer.config_deviceHardwareWakeKeys);
+        return DeviceCapabilities.get(context).getDeviceWakeKeys();
     }
 
     /* returns whether the device has power key or not. */
-    public static boolean hasPowerKey() {
-        return KeyCharacterMap.deviceHasKey(KeyEvent.KEYCODE_POWER);
+    public static boolean hasPowerKey(Context context) {
+        return DeviceCapabilities.get(context).hasPowerKey();
     }
 
     /* returns whether the device has home key or not. */
     public static boolean hasHomeKey(Context context) {
-        return (getDeviceKeys(context) & KEY_MASK_HOME) != 0;
+        return DeviceCapabilities.get(context).hasKeys(KEY_MASK_HOME);
     }
 
     /* returns whether the device has back key or not. */
     public static boolean hasBackKey(Context context) {
-        return (getDeviceKeys(context) & KEY_MASK_BACK) != 0;
+        return DeviceCapabilities.get(context).hasKeys(KEY_MASK_BACK);
     }
 
     /* returns whether the device has menu key or not. */
     public static boolean hasMenuKey(Context context) {
-        return (getDeviceKeys(context) & KEY_MASK_MENU) != 0;
+        return DeviceCapabilities.get(context).hasKeys(KEY_MASK_MENU);
     }
 
     /* returns whether the device has assist key or not. */
     public static boolean hasAssistKey(Context context) {
-        return (getDeviceKeys(context) & KEY_MASK_ASSIST) != 0;
+        return DeviceCapabilities.get(context).hasKeys(KEY_MASK_ASSIST);
     }
 
     /* returns whether the device has app switch key or not. */
     public static boolean hasAppSwitchKey(Context context) {
-        return (getDeviceKeys(context) & KEY_MASK_APP_SWITCH) != 0;
+        return DeviceCapabilities.get(context).hasKeys(KEY_MASK_APP_SWITCH);
     }
 
     /* returns whether the device has camera key or not. */
     public static boolean hasCameraKey(Context context) {
-        return (getDeviceKeys(context) & KEY_MASK_CAMERA) != 0;
+        return DeviceCapabilities.get(context).hasKeys(KEY_MASK_CAMERA);
     }
 
     /* returns whether the device has volume rocker or not. */
     public static boolean hasVolumeKeys(Context context) {
-        return (getDeviceKeys(context) & KEY_MASK_VOLUME) != 0;
+        return DeviceCapabilities.get(context).hasKeys(KEY_MASK_VOLUME);
     }
 
     /* returns whether the device can be waken using the home key or not. */
     public static boolean canWakeUsingHomeKey(Context context) {
-        return (getDeviceWakeKeys(context) & KEY_MASK_HOME) != 0;
+        return DeviceCapabilities.get(context).canWakeUsingKeys(KEY_MASK_HOME);
     }
 
     /* returns whether the device can be waken using the back key or not. */
     public static boolean canWakeUsingBackKey(Context context) {
-        return (getDeviceWakeKeys(context) & KEY_MASK_BACK) != 0;
+        return DeviceCapabilities.get(context).canWakeUsingKeys(KEY_MASK_BACK);
     }
 
     /* returns whether the device can be waken using the menu key or not. */
     public static boolean canWakeUsingMenuKey(Context context) {
-        return (getDeviceWakeKeys(context) & KEY_MASK_MENU) != 0;
+        return DeviceCapabilities.get(context).canWakeUsingKeys(KEY_MASK_MENU);
     }
 
     /* returns whether the device can be waken using the assist key or not. */
     public static boolean canWakeUsingAssistKey(Context context) {
-        return (getDeviceWakeKeys(context) & KEY_MASK_ASSIST) != 0;
+        return DeviceCapabilities.get(context).canWakeUsingKeys(KEY_MASK_ASSIST);
     }
 
     /* returns whether the device can be waken using the app switch key or not. */
     public static boolean canWakeUsingAppSwitchKey(Context context) {
-        return (getDeviceWakeKeys(context) & KEY_MASK_APP_SWITCH) != 0;
+        return DeviceCapabilities.get(context).canWakeUsingKeys(KEY_MASK_APP_SWITCH);
     }
 
     /* returns whether the device can be waken using the camera key or not. */
     public static boolean canWakeUsingCameraKey(Context context) {
-        return (getDeviceWakeKeys(context) & KEY_MASK_CAMERA) != 0;
+        return DeviceCapabilities.get(context).canWakeUsingKeys(KEY_MASK_CAMERA);
     }
 
     /* returns whether the device can be waken using the volume rocker or not. */
     public static boolean canWakeUsingVolumeKeys(Context context) {
-        return (getDeviceWakeKeys(context) & KEY_MASK_VOLUME) != 0;
+        return DeviceCapabilities.get(context).canWakeUsingKeys(KEY_MASK_VOLUME);
     }
 
     /* returns whether the device supports button backlight adjusment or not. */
     public static boolean hasButtonBacklightSupport(Context context) {
-        final boolean buttonBrightnessControlSupported = context.getResources().getInteger(
-                org.lineageos.platform.internal.R.integer
-                        .config_deviceSupportsButtonBrightnessControl) != 0;
-
-        // All hardware keys besides volume and camera can possibly have a backlight
-        return buttonBrightnessControlSupported
-                && (hasHomeKey(context) || hasBackKey(context) || hasMenuKey(context)
-                || hasAssistKey(context) || hasAppSwitchKey(context));
+        return DeviceCapabilities.get(context).hasButtonBacklightSupport();
     }
 
     /* returns whether the device supports keyboard backlight adjustment or not. */
     public static boolean hasKeyboardBacklightSupport(Context context) {
-        return context.getResources().getInteger(org.lineageos.platform.internal.R.integer
-                .config_deviceSupportsKeyboardBrightnessControl) != 0;
+        return DeviceCapabilities.get(context).hasKeyboardBacklightSupport();
     }
 
     public static boolean isPackageInstalled(Context context, String pkg, boolean ignoreState) {
@@ -220,48 +201,23 @@ public class DeviceUtils {
     }
 
     public static boolean isDozeAvailable(Context context) {
-        String name = Build.IS_DEBUGGABLE ? SystemProperties.get("debug.doze.component") : null;
-        if (TextUtils.isEmpty(name)) {
-            name = context.getResources().getString(
-                    com.android.internal.R.string.config_dozeComponent);
-        }
-        return !TextUtils.isEmpty(name);
+        return DeviceCapabilities.get(context).isDozeAvailable();
     }
 
     public static boolean deviceSupportsMobileData(Context ctx) {
-        TelephonyManager telephonyManager = ctx.getSystemService(TelephonyManager.class);
-        return telephonyManager.isDataCapable();
+        return DeviceCapabilities.get(ctx).supportsMobileData();
     }
 
     public static boolean deviceSupportsBluetooth(Context ctx) {
-        BluetoothManager bluetoothManager = (BluetoothManager)
-                ctx.getSystemService(Context.BLUETOOTH_SERVICE);
-        return (bluetoothManager.getAdapter() != null);
+        return DeviceCapabilities.get(ctx).supportsBluetooth();
     }
 
     public static boolean deviceSupportsNfc(Context ctx) {
-        return NfcAdapter.getDefaultAdapter(ctx) != null;
+        return DeviceCapabilities.get(ctx).supportsNfc();
     }
 
     public static boolean deviceSupportsFlashLight(@NonNull Context context) {
-        CameraManager cameraManager = context.getSystemService(CameraManager.class);
-        try {
-            String[] ids = cameraManager.getCameraIdList();
-            for (String id : ids) {
-                CameraCharacteristics c = cameraManager.getCameraCharacteristics(id);
-                Boolean flashAvailable = c.get(CameraCharacteristics.FLASH_INFO_AVAILABLE);
-                Integer lensFacing = c.get(CameraCharacteristics.LENS_FACING);
-                if (flashAvailable != null
-                        && flashAvailable
-                        && lensFacing != null
-                        && lensFacing == CameraCharacteristics.LENS_FACING_BACK) {
-                    return true;
-                }
-            }
-        } catch (CameraAccessException | AssertionError e) {
-            // Ignore
-        }
-        return false;
+        return DeviceCapabilities.get(context).supportsFlashLight();
     }
 
     public static boolean isMobileDataEnabled(Context context) {
@@ -7,14 +7,8 @@
 package org.lineageos.lineageparts.widget;
 
 import android.content.Context;
-import android.content.Intent;
-import android.content.pm.ApplicationInfo;
-import android.content.pm.PackageManager;
-import android.content.pm.ResolveInfo;
-import android.graphics.drawable.Drawable;
-import android.os.Handler;
-import android.os.Looper;
-import android.os.Message;
+import android.database.DataSetObserver;
+import android.graphics.Bitmap;
 import android.text.TextUtils;
 import android.view.LayoutInflater;
 import android.view.View;
@@ -24,86 +18,90 @@ import android.widget.ImageView;
 import android.widget.TextView;
 
 import org.lineageos.lineageparts.R;
+import org.lineageos.lineageparts.utils.AppCatalog;
+import org.lineageos.lineageparts.utils.AppIconCache;
 
-import java.util.Collections;
+import java.util.ArrayList;
 import java.util.HashSet;
-import java.util.LinkedList;
 import java.util.List;
 import java.util.Set;
-import java.util.TreeSet;
 
-public class PackageListAdapter extends BaseAdapter implements Runnable {
-    private final PackageManager mPm;
+/**
+ * Adapter of the apps of the shared {@link AppCatalog}, minus the excluded packages.
+ * The adapter only listens to the catalog while it is attached to a list, and only decodes
+ * the icons of the rows being bound, plus a few rows ahead in the scroll direction.
+ */
+public class PackageListAdapter extends BaseAdapter implements AppCatalog.Listener {
+    // Rows whose icons are decoded ahead of the scroll
+    private static final int PREFETCH_ROWS = 4;
+
+    private final AppCatalog mCatalog;
+    private final AppIconCache mIconCache;
+    private final int mIconSize;
     private final LayoutInflater mInflater;
-    private final List<PackageItem> mInstalledPackages = new LinkedList<>();
+    private List<AppCatalog.App> mApps;
+    private final List<AppCatalog.App> mVisibleApps = new ArrayList<>();
     private Set<String> mExcludedPackages = new HashSet<>();
+    private int mObserverCount;
+    private int mLastBoundPosition;
 
-    // Packages which don't have launcher icons, but which we want to show nevertheless
-    private static final String[] PACKAGE_WHITELIST = new String[] {
-        "android",                          /* system server */
-        "com.android.systemui",             /* system UI */
-        "com.android.providers.downloads"   /* download provider */
-    };
+    public PackageListAdapter(Context context) {
+        mCatalog = AppCatalog.get(context);
+        mIconCache = AppIconCache.get(context);
+        mIconSize = context.getResources().getDimensionPixelSize(
+                R.dimen.package_list_icon_size);
+        mInflater = LayoutInflater.from(context);
+        // Start loading now, so the apps are there by the time the list is shown
+        mCatalog.ensureLoaded();
+        mApps = mCatalog.getApps();
+        filterApps();
+    }
 
-    private final Handler mHandler = new Handler(Looper.getMainLooper()) {
-        @Override
-        public void handleMessage(Message msg) {
-            PackageItem item = (PackageItem) msg.obj;
-            int index = Collections.binarySearch(mInstalledPackages, item);
-            if (index < 0) {
-                mInstalledPackages.add(-index - 1, item);
-            } else {
-                mInstalledPackages.get(index).activityTitles.addAll(item.activityTitles);
-            }
-            notifyDataSetChanged();
-        }
-    };
-
-    public static class PackageItem implements Comparable<PackageItem> {
-        public final String packageName;
-        public final CharSequence title;
-        private final TreeSet<CharSequence> activityTitles = new TreeSet<>();
-        public final Drawable icon;
-
-        PackageItem(String packageName, CharSequence title, Drawable icon) {
-            this.packageName = packageName;
-            this.title = title;
-            this.icon = icon;
+    @Override
+    public void registerDataSetObserver(DataSetObserver observer) {
+        super.registerDataSetObserver(observer);
+        if (mObserverCount++ == 0) {
+            mCatalog.addListener(this);
         }
+    }
 
-        @Override
-        public int compareTo(PackageItem another) {
-            int result = title.toString().compareToIgnoreCase(another.title.toString());
-            return result != 0 ? result : packageName.compareTo(another.packageName);
+    @Override
+    public void unregisterDataSetObserver(DataSetObserver observer) {
+        super.unregisterDataSetObserver(observer);
+        if (--mObserverCount == 0) {
+            mCatalog.removeListener(this);
         }
     }
 
-    public PackageListAdapter(Context context) {
-        mPm = context.getPackageManager();
-        mInflater = LayoutInflater.from(context);
-        reloadList();
+    @Override
+    public void onCatalogChanged(List<AppCatalog.App> apps) {
+        if (apps == mApps) {
+            return;
+        }
+        mApps = apps;
+        filterApps();
+        notifyDataSetChanged();
     }
 
     @Override
     public int getCount() {
-        synchronized (mInstalledPackages) {
-            return mInstalledPackages.size();
-        }
+        return mVisibleApps.size();
     }
 
     @Override
-    public PackageItem getItem(int position) {
-        synchronized (mInstalledPackages) {
-            return mInstalledPackages.get(position);
-        }
+    public AppCatalog.App getItem(int position) {
+        return mVisibleApps.get(position);
     }
 
     @Override
     public long getItemId(int position) {
-        synchronized (mInstalledPackages) {
-            // packageName is guaranteed to be unique in mInstalledPackages
-            return mInstalledPackages.get(position).packageName.hashCode();
-        }
+        // packageName is guaranteed to be unique in the catalog
+        return mVisibleApps.get(position).packageName.hashCode();
+    }
+
+    @Override
+    public boolean hasStableIds() {
+        return true;
     }
 
     @Override
@@ -120,13 +118,19 @@ public class PackageListAdapter extends BaseAdapter implements Runnable {
             holder.icon = convertView.findViewById(com.android.internal.R.id.icon);
         }
 
-        PackageItem applicationInfo = getItem(position);
+        AppCatalog.App applicationInfo = getItem(position);
         holder.title.setText(applicationInfo.title);
-        holder.icon.setImageDrawable(applicationInfo.icon);
+        holder.packageName = applicationInfo.packageName;
+        final Bitmap icon = mIconCache.getCached(applicationInfo.packageName, mIconSize);
+        holder.icon.setImageBitmap(icon);
+        if (icon == null) {
+            mIconCache.load(applicationInfo.packageName, mIconSize, holder);
+        }
+        prefetchIcons(position);
 
         boolean needSummary = applicationInfo.activityTitles.size() > 0;
         if (applicationInfo.activityTitles.size() == 1) {
-            if (TextUtils.equals(applicationInfo.title, applicationInfo.activityTitles.first())) {
+            if (TextUtils.equals(applicationInfo.title, applicationInfo.activityTitles.get(0))) {
                 needSummary = false;
             }
         }
@@ -141,54 +145,49 @@ public class PackageListAdapter extends BaseAdapter implements Runnable {
         return convertView;
     }
 
-    private void reloadList() {
-        mInstalledPackages.clear();
-        new Thread(this).start();
+    public void setExcludedPackages(HashSet<String> packages) {
+        // Only filters the catalog, nothing is loaded again
+        mExcludedPackages = packages;
+        filterApps();
+        notifyDataSetChanged();
     }
 
-    @Override
-    public void run() {
-        final Intent mainIntent = new Intent(Intent.ACTION_MAIN, null);
-        mainIntent.addCategory(Intent.CATEGORY_LAUNCHER);
-        List<ResolveInfo> installedAppsInfo = mPm.queryIntentActivities(mainIntent,
-                PackageManager.ResolveInfoFlags.of(0));
-
-        for (ResolveInfo info : installedAppsInfo) {
-            ApplicationInfo appInfo = info.activityInfo.applicationInfo;
-            if (mExcludedPackages.contains(appInfo.packageName)) {
-                continue;
+    private void prefetchIcons(int position) {
+        final int direction = position >= mLastBoundPosition ? 1 : -1;
+        mLastBoundPosition = position;
+        for (int i = 1; i <= PREFETCH_ROWS; i++) {
+            final int prefetchPosition = position + direction * i;
+            if (prefetchPosition < 0 || prefetchPosition >= mVisibleApps.size()) {
+                break;
             }
-
-            final PackageItem item = new PackageItem(appInfo.packageName,
-                    appInfo.loadLabel(mPm), appInfo.loadIcon(mPm));
-            item.activityTitles.add(info.loadLabel(mPm));
-            mHandler.obtainMessage(0, item).sendToTarget();
-        }
-
-        for (String packageName : PACKAGE_WHITELIST) {
-            if (mExcludedPackages.contains(packageName)) {
-                continue;
-            }
-            try {
-                ApplicationInfo appInfo = mPm.getApplicationInfo(packageName,
-                        PackageManager.ApplicationInfoFlags.of(0));
-                final PackageItem item = new PackageItem(appInfo.packageName,
-                        appInfo.loadLabel(mPm), appInfo.loadIcon(mPm));
-                mHandler.obtainMessage(0, item).sendToTarget();
-            } catch (PackageManager.NameNotFoundException ignored) {
-                // package not present, so nothing to add -> ignore it
+            final String packageName = mVisibleApps.get(prefetchPosition).packageName;
+            if (mIconCache.getCached(packageName, mIconSize) == null) {
+                mIconCache.load(packageName, mIconSize, null);
             }
         }
     }
 
-    public void setExcludedPackages(HashSet<String> packages) {
-        mExcludedPackages = packages;
-        reloadList();
+    private void filterApps() {
+        mVisibleApps.clear();
+        for (AppCatalog.App app : mApps) {
+            if (!mExcludedPackages.contains(app.packageName)) {
+                mVisibleApps.add(app);
+            }
+        }
     }
 
-    private static class ViewHolder {
+    private static class ViewHolder implements AppIconCache.Callback {
+        String packageName;
         TextView title;
         TextView summary;
         ImageView icon;
+
+        @Override
+        public void onIconLoaded(String loadedPackageName, Bitmap loadedIcon) {
+            // The row may have been recycled for another app in the meantime
+            if (loadedIcon != null && loadedPackageName.equals(packageName)) {
+                icon.setImageBitmap(loadedIcon);
+            }
+        }
     }
 }
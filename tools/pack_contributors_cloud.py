@@ -0,0 +1,55 @@
+#!/usr/bin/env python3
+#
+# SPDX-FileCopyrightText: 2026 The LineageOS Project
+# SPDX-License-Identifier: Apache-2.0
+#
+# Packs the cloud metadata of contributors.db into the compact binary format read
+# (memory mapped) by ContributorsCloudData. Run it every time contributors.db is updated:
+#
+#   tools/pack_contributors_cloud.py assets/contributors.db assets/contributors.bin
+#
+# Layout (little endian):
+#   header:  magic 'LCCB', version, orig_size, contributors, commits (int32 each),
+#            date (int64), count, names_offset, names_length (int32 each)
+#   records: count x (id, name_offset, name_length, r (int32 each), x, y, fs (float32 each))
+#   names:   UTF-8 names, each stored once
+
+import sqlite3
+import struct
+import sys
+
+MAGIC = 0x4243434C  # 'LCCB'
+VERSION = 1
+HEADER = struct.Struct('<iiiiiqiii')
+RECORD = struct.Struct('<iiiifff')
+
+
+def main(db_path, out_path):
+    db = sqlite3.connect(db_path)
+    info = dict(db.execute('select key, value from info'))
+    contributors, commits = db.execute(
+        'select count(*), sum(commits) from metadata where id > 0').fetchone()
+    rows = db.execute('select id, name, x, y, r, fs from metadata').fetchall()
+
+    names = bytearray()
+    name_offsets = {}
+    records = bytearray()
+    for (id, name, x, y, r, fs) in rows:
+        encoded = name.encode('utf-8')
+        if encoded not in name_offsets:
+            name_offsets[encoded] = len(names)
+            names += encoded
+        records += RECORD.pack(id, name_offsets[encoded], len(encoded), r, x, y, fs)
+
+    names_offset = HEADER.size + len(records)
+    with open(out_path, 'wb') as f:
+        f.write(HEADER.pack(MAGIC, VERSION, int(info['orig_size']), contributors,
+                            commits, int(info['date']), len(rows), names_offset, len(names)))
+        f.write(records)
+        f.write(names)
+
+
+if __name__ == '__main__':
+    if len(sys.argv) != 3:
+        sys.exit('usage: %s <contributors.db> <contributors.bin>' % sys.argv[0])
+    main(sys.argv[1], sys.argv[2])